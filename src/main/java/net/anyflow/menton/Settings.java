@@ -4,17 +4,15 @@
 package net.anyflow.menton;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.security.cert.CertificateException;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import com.google.common.collect.Maps;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
@@ -30,9 +28,12 @@ public class Settings extends java.util.Properties {
 		SELF = new Settings();
 	}
 
-	private Map<String, String> webResourceExtensionToMimes;
 	private SelfSignedCertificate ssc;
 
+	private volatile SettingsSnapshot snapshot;
+
+	private final List<SettingsListener> listeners = new CopyOnWriteArrayList<SettingsListener>();
+
 	private Settings() {
 		try {
 			ssc = new SelfSignedCertificate();
@@ -40,6 +41,119 @@ public class Settings extends java.util.Properties {
 		catch (CertificateException e) {
 			logger.error(e.getMessage(), e);
 		}
+
+		snapshot = new SettingsSnapshot(this, false);
+	}
+
+	/**
+	 * @return typed values of the current settings. Replaced as a whole when
+	 *         the settings change, so values read from one snapshot are
+	 *         consistent.
+	 */
+	public SettingsSnapshot snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Sets the property, publishes a new snapshot and informs the listeners.
+	 */
+	@Override
+	public Object setProperty(String key, String value) {
+		Object ret;
+		SettingsSnapshot previous;
+		SettingsSnapshot current;
+
+		synchronized (this) {
+			ret = super.setProperty(key, value);
+
+			previous = snapshot;
+			current = new SettingsSnapshot(this, false);
+			snapshot = current;
+		}
+
+		inform(previous, current);
+
+		return ret;
+	}
+
+	/**
+	 * @param settingsListener
+	 *            informed after every change of the settings
+	 */
+	public void register(SettingsListener settingsListener) {
+		listeners.add(settingsListener);
+	}
+
+	/**
+	 * @param settingsListener
+	 */
+	public void deregister(SettingsListener settingsListener) {
+		listeners.remove(settingsListener);
+	}
+
+	private void inform(SettingsSnapshot previous, SettingsSnapshot current) {
+		for (SettingsListener listener : listeners) {
+			try {
+				listener.settingsChanged(previous, current);
+			}
+			catch (RuntimeException e) {
+				logger.error("Settings listener failed : " + listener, e);
+			}
+		}
+	}
+
+	/**
+	 * Reloads the properties file. See {@link #reload(Properties)}.
+	 * 
+	 * @param propertiesFile
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws IllegalArgumentException
+	 *             if a value is malformed
+	 */
+	public void reload(File propertiesFile) throws IOException {
+		Properties loaded = new Properties();
+
+		try (InputStream is = new FileInputStream(propertiesFile)) {
+			loaded.load(is);
+		}
+
+		reload(loaded);
+	}
+
+	/**
+	 * Validates the properties and applies them at once. If any value is
+	 * malformed, nothing is applied. Properties missing in the new ones keep
+	 * their current values.
+	 * <p>
+	 * Settings read on start-up(ports, threads, SSL, pipeline options) take
+	 * effect on restart only.
+	 * 
+	 * @param properties
+	 *            new properties
+	 * @throws IllegalArgumentException
+	 *             if a value is malformed
+	 */
+	public void reload(Properties properties) {
+		SettingsSnapshot previous;
+		SettingsSnapshot current;
+
+		synchronized (this) {
+			Properties merged = new Properties();
+			merged.putAll(this);
+			merged.putAll(properties);
+
+			current = new SettingsSnapshot(merged, true);
+
+			putAll(properties);
+
+			previous = snapshot;
+			snapshot = current;
+		}
+
+		logger.info("Settings reloaded.");
+
+		inform(previous, current);
 	}
 
 	public int getInt(String key, int defaultValue) {
@@ -55,6 +169,14 @@ public class Settings extends java.util.Properties {
 		}
 	}
 
+	public boolean getBoolean(String key, boolean defaultValue) {
+		String valueString = this.getProperty(key);
+
+		if (valueString == null || valueString.trim().isEmpty()) { return defaultValue; }
+
+		return "true".equalsIgnoreCase(valueString.trim());
+	}
+
 	/**
 	 * initialize the configurator
 	 * 
@@ -85,25 +207,15 @@ public class Settings extends java.util.Properties {
 			throw e;
 		}
 
-		webResourceExtensionToMimes = Maps.newHashMap();
-
-		try {
-			JSONObject obj = new JSONObject(getProperty("menton.httpServer.MIME"));
-			@SuppressWarnings("unchecked")
-			Iterator<String> keys = obj.keys();
+		SettingsSnapshot previous = snapshot;
+		SettingsSnapshot current = new SettingsSnapshot(this, false);
+		snapshot = current;
 
-			while (keys.hasNext()) {
-				String key = keys.next();
-				webResourceExtensionToMimes.put(key, obj.get(key).toString());
-			}
-		}
-		catch (JSONException e) {
-			logger.error(e.getMessage(), e);
-		}
+		inform(previous, current);
 	}
 
 	public Map<String, String> webResourceExtensionToMimes() {
-		return webResourceExtensionToMimes;
+		return snapshot.webResourceExtensionToMimes();
 	}
 
 	public static Integer tryParse(String text) {
@@ -147,13 +259,7 @@ public class Settings extends java.util.Properties {
 	 * @return context root path
 	 */
 	public String httpContextRoot() {
-		String ret = getProperty("menton.httpServer.contextRoot", "/");
-
-		if (ret.equalsIgnoreCase("") || ret.charAt(ret.length() - 1) != '/') {
-			ret += "/";
-		}
-
-		return ret;
+		return snapshot.httpContextRoot();
 	}
 
 	public String WebResourcePhysicalRootPath() {
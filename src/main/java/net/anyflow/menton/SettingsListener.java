@@ -0,0 +1,20 @@
+package net.anyflow.menton;
+
+/**
+ * Subscriber of settings changes. Registered by
+ * {@link Settings#register(SettingsListener)}.
+ *
+ * @author anyflow
+ */
+public interface SettingsListener {
+
+	/**
+	 * called after the settings were changed(reloaded or set).
+	 * 
+	 * @param previous
+	 *            the snapshot before the change
+	 * @param current
+	 *            the snapshot after the change
+	 */
+	void settingsChanged(SettingsSnapshot previous, SettingsSnapshot current);
+}
@@ -0,0 +1,275 @@
+package net.anyflow.menton;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import net.anyflow.menton.http.HttpRequestHandler;
+
+/**
+ * Immutable typed values of the settings read on every request. Parsed once
+ * when the settings change and published by {@link Settings#snapshot()}, so
+ * the request path reads plain fields instead of parsing property strings.
+ * <p>
+ * Malformed values fall back to the defaults, except for the strict parsing
+ * used to validate reloaded settings.
+ *
+ * @author anyflow
+ */
+public final class SettingsSnapshot {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SettingsSnapshot.class);
+
+	private final boolean strict;
+
+	private final String httpContextRoot;
+	private final String webResourcePhysicalRootPath;
+	private final Map<String, String> webResourceExtensionToMimes;
+	private final boolean allowCrossDomain;
+	private final Set<String> corsAllowedOrigins;
+	private final String corsAllowedMethods;
+	private final String corsAllowedHeaders;
+	private final int corsMaxAge;
+	private final HttpRequestHandler.Execution execution;
+	private final int asyncTimeout;
+	private final int maxContentLength;
+
+	private final boolean writeHttpRequest;
+	private final boolean writeHttpResponse;
+	private final boolean writelogOfNettyLogger;
+	private final boolean logWebResourceHttpResponseContent;
+	private final int httpResponseContentSize;
+	private final double accessLogSampleRate;
+	private final int accessLogBodyLimit;
+
+	/**
+	 * @param properties
+	 *            the settings
+	 * @param strict
+	 *            whether malformed values are rejected instead of falling
+	 *            back to the defaults
+	 * @throws IllegalArgumentException
+	 *             if strict and a value is malformed
+	 */
+	SettingsSnapshot(Properties properties, boolean strict) {
+		this.strict = strict;
+
+		String contextRoot = properties.getProperty("menton.httpServer.contextRoot", "/");
+		this.httpContextRoot = contextRoot.isEmpty() || contextRoot.charAt(contextRoot.length() - 1) != '/'
+				? contextRoot + "/" : contextRoot;
+		this.webResourcePhysicalRootPath = properties.getProperty("menton.httpServer.webResourcePhysicalRootPath");
+
+		this.webResourceExtensionToMimes = parseMimes(properties.getProperty("menton.httpServer.MIME"));
+		this.allowCrossDomain = booleanValue(properties, "menton.httpServer.allowCrossDomain", false);
+		String origins = properties.getProperty("menton.httpServer.cors.allowedOrigins", "*");
+		this.corsAllowedOrigins = ImmutableSet
+				.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(origins.toLowerCase(Locale.ENGLISH)));
+		this.corsAllowedMethods = properties.getProperty("menton.httpServer.cors.allowedMethods",
+				"POST, GET, PUT, DELETE");
+		this.corsAllowedHeaders = properties.getProperty("menton.httpServer.cors.allowedHeaders", "X-PINGARUNER");
+		this.corsMaxAge = intValue(properties, "menton.httpServer.cors.maxAge", 1728000);
+		this.execution = parseExecution(properties.getProperty("menton.httpServer.execution", "EVENT_LOOP"));
+		this.asyncTimeout = intValue(properties, "menton.httpServer.asyncTimeout", 30000);
+		this.maxContentLength = intValue(properties, "menton.httpServer.maxContentLength", 1048576);
+
+		this.writeHttpRequest = booleanValue(properties, "menton.logging.writeHttpRequest", false);
+		this.writeHttpResponse = booleanValue(properties, "menton.logging.writeHttpResponse", false);
+		this.writelogOfNettyLogger = booleanValue(properties, "menton.logging.writelogOfNettyLogger", false);
+		this.logWebResourceHttpResponseContent = booleanValue(properties,
+				"menton.logging.logWebResourceHttpResponseContent", false);
+		this.httpResponseContentSize = intValue(properties, "menton.logging.httpResponseContentSize", 100);
+		this.accessLogSampleRate = doubleValue(properties, "menton.logging.accessLog.sampleRate", 1.0);
+		this.accessLogBodyLimit = intValue(properties, "menton.logging.accessLog.bodyLimit", 0);
+	}
+
+	private int intValue(Properties properties, String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) { return defaultValue; }
+
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			if (strict) { throw new IllegalArgumentException(key + " should be an integer : " + value); }
+
+			return defaultValue;
+		}
+	}
+
+	private double doubleValue(Properties properties, String key, double defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) { return defaultValue; }
+
+		try {
+			return Double.parseDouble(value.trim());
+		}
+		catch (NumberFormatException e) {
+			if (strict) { throw new IllegalArgumentException(key + " should be a number : " + value); }
+
+			return defaultValue;
+		}
+	}
+
+	private boolean booleanValue(Properties properties, String key, boolean defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) { return defaultValue; }
+
+		value = value.trim();
+		if (strict && "true".equalsIgnoreCase(value) == false && "false".equalsIgnoreCase(value) == false) {
+			throw new IllegalArgumentException(key + " should be true or false : " + value);
+		}
+
+		return "true".equalsIgnoreCase(value);
+	}
+
+	private Map<String, String> parseMimes(String json) {
+		if (json == null || json.trim().isEmpty()) { return ImmutableMap.of(); }
+
+		ImmutableMap.Builder<String, String> ret = ImmutableMap.builder();
+
+		try {
+			JSONObject obj = new JSONObject(json);
+			@SuppressWarnings("unchecked")
+			Iterator<String> keys = obj.keys();
+
+			while (keys.hasNext()) {
+				String key = keys.next();
+				ret.put(key, obj.get(key).toString());
+			}
+		}
+		catch (JSONException e) {
+			if (strict) {
+				throw new IllegalArgumentException("menton.httpServer.MIME is malformed : " + e.getMessage());
+			}
+
+			logger.error(e.getMessage(), e);
+		}
+
+		return ret.build();
+	}
+
+	private HttpRequestHandler.Execution parseExecution(String execution) {
+		try {
+			return HttpRequestHandler.Execution.valueOf(execution.trim().toUpperCase(Locale.ENGLISH));
+		}
+		catch (IllegalArgumentException e) {
+			if (strict) {
+				throw new IllegalArgumentException("menton.httpServer.execution is unknown : " + execution);
+			}
+
+			return HttpRequestHandler.Execution.EVENT_LOOP;
+		}
+	}
+
+	/**
+	 * @return context root path, ending with '/'.
+	 */
+	public String httpContextRoot() {
+		return httpContextRoot;
+	}
+
+	/**
+	 * @return web resource root directory. null if not set.
+	 */
+	public String webResourcePhysicalRootPath() {
+		return webResourcePhysicalRootPath;
+	}
+
+	public Map<String, String> webResourceExtensionToMimes() {
+		return webResourceExtensionToMimes;
+	}
+
+	public boolean allowCrossDomain() {
+		return allowCrossDomain;
+	}
+
+	/**
+	 * @return lower-cased origins allowed for cross domain requests. "*"
+	 *         means any origin.
+	 */
+	public Set<String> corsAllowedOrigins() {
+		return corsAllowedOrigins;
+	}
+
+	public String corsAllowedMethods() {
+		return corsAllowedMethods;
+	}
+
+	public String corsAllowedHeaders() {
+		return corsAllowedHeaders;
+	}
+
+	/**
+	 * @return seconds the preflight results may be cached by the clients.
+	 */
+	public int corsMaxAge() {
+		return corsMaxAge;
+	}
+
+	/**
+	 * @return execution of the handlers whose execution is DEFAULT.
+	 *         EVENT_LOOP if the setting is invalid.
+	 */
+	public HttpRequestHandler.Execution execution() {
+		return execution;
+	}
+
+	/**
+	 * @return default timeout of asynchronous handlers in milliseconds.
+	 */
+	public int asyncTimeout() {
+		return asyncTimeout;
+	}
+
+	public int maxContentLength() {
+		return maxContentLength;
+	}
+
+	public boolean writeHttpRequest() {
+		return writeHttpRequest;
+	}
+
+	public boolean writeHttpResponse() {
+		return writeHttpResponse;
+	}
+
+	public boolean writelogOfNettyLogger() {
+		return writelogOfNettyLogger;
+	}
+
+	public boolean logWebResourceHttpResponseContent() {
+		return logWebResourceHttpResponseContent;
+	}
+
+	/**
+	 * @return the number of response content characters logged. Negative
+	 *         means all.
+	 */
+	public int httpResponseContentSize() {
+		return httpResponseContentSize;
+	}
+
+	/**
+	 * @return ratio of the requests written to the access log(0.0 ~ 1.0).
+	 */
+	public double accessLogSampleRate() {
+		return accessLogSampleRate;
+	}
+
+	/**
+	 * @return bytes of the request content written to the access log. 0 means
+	 *         none.
+	 */
+	public int accessLogBodyLimit() {
+		return accessLogBodyLimit;
+	}
+}
@@ -0,0 +1,118 @@
+package net.anyflow.menton;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the properties file and reloads {@link Settings#SELF} on change(see
+ * {@link Settings#reload(File)}). Malformed files are logged and ignored, so
+ * the current settings are kept until the file is fixed.
+ *
+ * @author anyflow
+ */
+public class SettingsWatcher {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SettingsWatcher.class);
+
+	/**
+	 * Milliseconds to wait for the burst of events of an editor save.
+	 */
+	private static final long SETTLE_TIME = 200;
+
+	private final File propertiesFile;
+	private final WatchService watchService;
+	private final Thread thread;
+
+	/**
+	 * @param propertiesFile
+	 *            properties file to watch
+	 * @throws IOException
+	 *             if the directory of the file can not be watched
+	 */
+	public SettingsWatcher(File propertiesFile) throws IOException {
+		this.propertiesFile = propertiesFile.getAbsoluteFile();
+		this.watchService = FileSystems.getDefault().newWatchService();
+
+		this.propertiesFile.getParentFile().toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "settings-watcher");
+		this.thread.setDaemon(true);
+	}
+
+	public void start() {
+		thread.start();
+
+		logger.info("Watching settings file : {}", propertiesFile);
+	}
+
+	public void stop() {
+		try {
+			watchService.close();
+		}
+		catch (IOException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	private void watch() {
+		Path fileName = propertiesFile.toPath().getFileName();
+
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					changed |= fileName.equals(event.context());
+				}
+
+				if (key.reset() == false) {
+					logger.error("Settings file directory is not accessible any more : {}", propertiesFile);
+					return;
+				}
+
+				if (changed) {
+					settle();
+					reload();
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			logger.debug("Settings watcher stopped.");
+		}
+	}
+
+	/**
+	 * Waits until the events stop and discards them.
+	 */
+	private void settle() throws InterruptedException {
+		WatchKey key;
+		while ((key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS)) != null) {
+			key.pollEvents();
+			key.reset();
+		}
+	}
+
+	private void reload() {
+		try {
+			Settings.SELF.reload(propertiesFile);
+		}
+		catch (IOException | IllegalArgumentException e) {
+			logger.error("Reloading settings failed. The current settings are kept : " + e.getMessage());
+		}
+	}
+}
@@ -1,6 +1,12 @@
 package net.anyflow.menton.example.twitter;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 import net.anyflow.menton.Settings;
+import net.anyflow.menton.SettingsWatcher;
 import net.anyflow.menton.general.TaskCompletionListener;
 import net.anyflow.menton.http.WebServer;
 
@@ -13,7 +19,8 @@ public class Entrypoint implements TaskCompletionListener {
 
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Entrypoint.class);
 
-	private final WebServer httpServer = new WebServer();
+	private WebServer httpServer;
+	private SettingsWatcher settingsWatcher;
 
 	public void start() {
 
@@ -23,11 +30,11 @@ public class Entrypoint implements TaskCompletionListener {
 
 			logger.info("Starting Twitter...");
 
-			net.anyflow.menton.Settings.SELF.initialize(
-					getClass().getClassLoader().getResourceAsStream("META-INF/example/twitter/application.properties"));
+			initializeSettings();
 
-			// HTTP server initiation.
-			httpServer.start("net.anyflow");
+			// HTTP server initiation. WebServer reads its system settings(transport, threads) on construction.
+			httpServer = new WebServer();
+			httpServer.start("net.anyflow.menton.example.twitter");
 
 			Runtime.getRuntime().addShutdownHook(new Thread() {
 
@@ -43,6 +50,29 @@ public class Entrypoint implements TaskCompletionListener {
 		}
 	}
 
+	/**
+	 * Loads the settings from the file of 'menton.settingsFile' system
+	 * property and reloads them on change. If not set, the bundled
+	 * properties are loaded.
+	 */
+	private void initializeSettings() throws IOException {
+		String path = System.getProperty("menton.settingsFile");
+
+		if (path == null) {
+			Settings.SELF.initialize(
+					getClass().getClassLoader().getResourceAsStream("META-INF/example/twitter/application.properties"));
+			return;
+		}
+
+		File file = new File(path);
+		try (InputStream is = new FileInputStream(file)) {
+			Settings.SELF.initialize(is);
+		}
+
+		settingsWatcher = new SettingsWatcher(file);
+		settingsWatcher.start();
+	}
+
 	public int port() {
 		String port = Settings.SELF.getProperty("menton.httpServer.port");
 
@@ -56,7 +86,13 @@ public class Entrypoint implements TaskCompletionListener {
 
 	public void shutdown(boolean haltJavaRuntime) {
 
-		httpServer.shutdown();
+		if (settingsWatcher != null) {
+			settingsWatcher.stop();
+		}
+
+		if (httpServer != null) {
+			httpServer.shutdown();
+		}
 
 		logger.info("Twitter shutdowned gracefully.");
 
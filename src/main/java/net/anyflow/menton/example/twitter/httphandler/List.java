@@ -1,22 +1,43 @@
 package net.anyflow.menton.example.twitter.httphandler;
 
+import java.io.IOException;
 import java.util.Collection;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
 import net.anyflow.menton.example.twitter.Database;
-import net.anyflow.menton.example.twitter.MessageGenerator;
 import net.anyflow.menton.example.twitter.model.Tweet;
 import net.anyflow.menton.http.HttpRequestHandler;
 
 /**
  * @author Park Hyunjeong
  */
-@HttpRequestHandler.Handles(paths = { "twitter/list" }, httpMethods = { "GET" })
+@HttpRequestHandler.Handles(paths = { "twitter/list" }, httpMethods = { "GET" }, execution = HttpRequestHandler.Execution.WORKER)
 public class List extends HttpRequestHandler {
 
+	/**
+	 * The stream is closed by the router, not by the writer : a failed
+	 * serialization must not end the response with the last chunk.
+	 */
+	private static final ObjectWriter WRITER = new ObjectMapper().writer()
+			.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
 	@Override
 	public String service() {
 		Collection<Tweet> tweets = Database.instance().list();
 
-		return MessageGenerator.generateJson(tweets, httpResponse());
+		try {
+			// serialized into the chunked response directly instead of a string.
+			WRITER.writeValue(httpResponse().stream().outputStream(), tweets);
+		}
+		catch (IOException e) {
+			// the status may be already sent : the router answers 500 or
+			// closes the connection without the last chunk(truncated).
+			throw new RuntimeException(e);
+		}
+
+		return null;
 	}
-}
\ No newline at end of file
+}
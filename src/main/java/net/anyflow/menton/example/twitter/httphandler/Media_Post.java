@@ -0,0 +1,42 @@
+package net.anyflow.menton.example.twitter.httphandler;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+
+import io.netty.buffer.ByteBuf;
+import net.anyflow.menton.example.twitter.MessageGenerator;
+import net.anyflow.menton.http.HttpRequest;
+import net.anyflow.menton.http.HttpRequestHandler;
+
+/**
+ * Media upload. The body is received chunk by chunk, so the upload size is not
+ * limited by the request aggregation.
+ * 
+ * @author anyflow
+ */
+@HttpRequestHandler.Handles(paths = { "twitter/media" }, httpMethods = { "POST" }, streaming = true)
+public class Media_Post extends HttpRequestHandler {
+
+	private final MessageDigest digest;
+	private long size;
+
+	public Media_Post() throws NoSuchAlgorithmException {
+		digest = MessageDigest.getInstance("SHA-1");
+	}
+
+	@Override
+	public void contentReceived(HttpRequest request, ByteBuf content) {
+		size += content.readableBytes();
+		digest.update(content.nioBuffer());
+	}
+
+	@Override
+	public String service() {
+		return MessageGenerator.generateJson(
+				ImmutableMap.of("size", size, "sha1", BaseEncoding.base16().lowerCase().encode(digest.digest())),
+				httpResponse());
+	}
+}
@@ -0,0 +1,50 @@
+package net.anyflow.menton.example.twitter.httphandler;
+
+import java.net.URISyntaxException;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import io.netty.util.CharsetUtil;
+import net.anyflow.menton.Settings;
+import net.anyflow.menton.http.AsyncHttpRequestHandler;
+import net.anyflow.menton.http.HttpClient;
+import net.anyflow.menton.http.HttpRequest;
+import net.anyflow.menton.http.HttpRequestHandler;
+import net.anyflow.menton.http.HttpResponse;
+import net.anyflow.menton.http.MessageReceiver;
+
+/**
+ * Relays a tweet from the tweet API, as a downstream service. No thread is
+ * held while waiting for the downstream response.
+ * 
+ * @author anyflow
+ */
+@HttpRequestHandler.Handles(paths = { "twitter/relay/{id}" }, httpMethods = { "GET" }, scope = HttpRequestHandler.Scope.SINGLETON, timeout = 5000)
+public class Relay_Get extends AsyncHttpRequestHandler {
+
+	@Override
+	public ListenableFuture<String> serviceAsync(HttpRequest request, final HttpResponse response) {
+		final SettableFuture<String> ret = SettableFuture.create();
+
+		HttpClient client;
+		try {
+			client = new HttpClient("http://localhost:" + Settings.SELF.httpPort() + Settings.SELF.httpContextRoot()
+					+ "twitter/tweet/" + request.pathParameter("id"));
+		}
+		catch (URISyntaxException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+
+		client.get(new MessageReceiver() {
+			@Override
+			public void messageReceived(HttpRequest request, HttpResponse relayed) {
+				response.setStatus(relayed.getStatus());
+				ret.set(relayed.content().toString(CharsetUtil.UTF_8));
+			}
+		});
+
+		return ret;
+	}
+}
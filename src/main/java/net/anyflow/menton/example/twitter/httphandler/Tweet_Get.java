@@ -4,32 +4,35 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import net.anyflow.menton.example.twitter.Database;
 import net.anyflow.menton.example.twitter.MessageGenerator;
 import net.anyflow.menton.example.twitter.model.Tweet;
+import net.anyflow.menton.http.HttpRequest;
 import net.anyflow.menton.http.HttpRequestHandler;
+import net.anyflow.menton.http.HttpResponse;
+import net.anyflow.menton.http.StatelessHttpRequestHandler;
 
 /**
  * @author Park Hyunjeong
  */
-@HttpRequestHandler.Handles(paths = { "twitter/tweet/{id}" }, httpMethods = { "GET" })
-public class Tweet_Get extends HttpRequestHandler {
+@HttpRequestHandler.Handles(paths = { "twitter/tweet/{id}" }, httpMethods = { "GET" }, scope = HttpRequestHandler.Scope.SINGLETON)
+public class Tweet_Get extends StatelessHttpRequestHandler {
 
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Tweet_Get.class);
 
 	@Override
-	public String service() {
-		String id = httpRequest().pathParameter("id");
+	public String service(HttpRequest request, HttpResponse response) {
+		String id = request.pathParameter("id");
 		if (id == null) {
-			httpResponse().setStatus(HttpResponseStatus.FORBIDDEN);
-			return MessageGenerator.generateJson(new Error("Invalid id"), httpResponse());
+			response.setStatus(HttpResponseStatus.FORBIDDEN);
+			return MessageGenerator.generateJson(new Error("Invalid id"), response);
 		}
 
 		Tweet tweet = Database.instance().get(id);
 		if (tweet == null) {
 			logger.error("id parameter required.");
 
-			httpResponse().setStatus(HttpResponseStatus.FORBIDDEN);
-			return MessageGenerator.generateJson(new Error("Invalid id"), httpResponse());
+			response.setStatus(HttpResponseStatus.FORBIDDEN);
+			return MessageGenerator.generateJson(new Error("Invalid id"), response);
 		}
 
-		return MessageGenerator.generateJson(tweet, httpResponse());
+		return MessageGenerator.generateJson(tweet, response);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,286 @@
+package net.anyflow.menton.http;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Charsets;
+
+import io.netty.handler.codec.http.HttpMethod;
+import net.anyflow.menton.Settings;
+
+/**
+ * Access log of the server. Event loops put a compact record of each response
+ * into a preallocated ring buffer, and a background writer formats and writes
+ * the records to the file in batches. Records are dropped(see
+ * {@link #dropped()}) rather than blocking the event loops when the buffer is
+ * full. Configured by settings below.
+ * <ul>
+ * <li>menton.logging.accessLog.enabled : true enables the access log(default
+ * false).</li>
+ * <li>menton.logging.accessLog.file : log file path(default
+ * log/access.log).</li>
+ * <li>menton.logging.accessLog.bufferSize : records buffered at most, rounded
+ * up to a power of 2(default 8192).</li>
+ * <li>menton.logging.accessLog.sampleRate : ratio of the requests
+ * logged(0.0 ~ 1.0, default 1.0).</li>
+ * <li>menton.logging.accessLog.bodyLimit : bytes of the request content
+ * logged(default 0, no content).</li>
+ * </ul>
+ * A line is formatted as
+ * <code>time remote-address "method uri" status bytes latency(ms) ["content"]</code>.
+ *
+ * @author anyflow
+ */
+public class AccessLog {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AccessLog.class);
+
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private final Record[] records;
+	private final AtomicLongArray published;
+	private final int mask;
+
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final File file;
+	private final Writer out;
+	private final Thread writer;
+	private volatile boolean closed;
+
+	/**
+	 * @return the access log of the settings. null if disabled or the file
+	 *         can not be opened.
+	 */
+	static AccessLog fromSettings() {
+		if (Settings.SELF.getBoolean("menton.logging.accessLog.enabled", false) == false) { return null; }
+
+		File file = new File(Settings.SELF.getProperty("menton.logging.accessLog.file", "log/access.log"));
+
+		try {
+			return new AccessLog(file, Settings.SELF.getInt("menton.logging.accessLog.bufferSize", 8192));
+		}
+		catch (IOException e) {
+			logger.error("Access log file can not be opened : " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Opens the file(appended) and starts the writer.
+	 *
+	 * @param bufferSize
+	 *            records buffered at most, rounded up to a power of 2
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	AccessLog(File file, int bufferSize) throws IOException {
+		int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+
+		this.records = new Record[capacity];
+		for (int i = 0; i < capacity; ++i) {
+			records[i] = new Record();
+		}
+		this.published = new AtomicLongArray(capacity);
+		this.mask = capacity - 1;
+
+		this.file = file.getAbsoluteFile();
+		if (this.file.getParentFile() != null) {
+			this.file.getParentFile().mkdirs();
+		}
+		this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), Charsets.UTF_8),
+				WRITE_BUFFER_SIZE);
+
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "access-log-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+
+		logger.info("Access log file : {}", this.file);
+	}
+
+	/**
+	 * Puts a record. Never blocks.
+	 *
+	 * @param body
+	 *            captured request content. null if not captured.
+	 * @return false if the buffer is full or closed, so the record is dropped.
+	 */
+	boolean log(HttpMethod method, String uri, int status, long bytes, long latencyNanos, SocketAddress remote,
+			String body) {
+		if (closed) { return false; }
+
+		long sequence;
+		do {
+			sequence = tail.get();
+
+			if (sequence - head >= records.length) {
+				dropped.incrementAndGet();
+				return false;
+			}
+		}
+		while (tail.compareAndSet(sequence, sequence + 1) == false);
+
+		int index = (int) sequence & mask;
+		records[index].set(System.currentTimeMillis(), method, uri, status, bytes, latencyNanos, remote, body);
+		published.lazySet(index, sequence + 1);
+
+		return true;
+	}
+
+	/**
+	 * @return the number of records dropped because the buffer was full.
+	 */
+	public long dropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Writes the records buffered and closes the file.
+	 */
+	void close() {
+		closed = true;
+		LockSupport.unpark(writer);
+
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void write() {
+		StringBuilder batch = new StringBuilder(WRITE_BUFFER_SIZE);
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+		Date date = new Date();
+
+		while (true) {
+			long sequence = head;
+			int index = (int) sequence & mask;
+
+			if (published.get(index) == sequence + 1) {
+				records[index].format(batch, dateFormat, date);
+				records[index].clear();
+				head = sequence + 1;
+
+				if (batch.length() >= WRITE_BUFFER_SIZE) {
+					flush(batch, false);
+				}
+				continue;
+			}
+
+			// caught up : write the batch to the disk.
+			flush(batch, true);
+
+			if (closed && tail.get() == head) {
+				break;
+			}
+
+			LockSupport.parkNanos(this, IDLE_WAIT);
+		}
+
+		try {
+			out.close();
+		}
+		catch (IOException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	private void flush(StringBuilder batch, boolean toDisk) {
+		try {
+			if (batch.length() > 0) {
+				out.append(batch);
+				batch.setLength(0);
+			}
+
+			if (toDisk) {
+				out.flush();
+			}
+		}
+		catch (IOException e) {
+			batch.setLength(0);
+			logger.error("Writing access log failed : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Mutable slot of the ring buffer. Reused, so no record is allocated per
+	 * request.
+	 */
+	private static final class Record {
+		private long time;
+		private HttpMethod method;
+		private String uri;
+		private int status;
+		private long bytes;
+		private long latencyNanos;
+		private SocketAddress remote;
+		private String body;
+
+		private void set(long time, HttpMethod method, String uri, int status, long bytes, long latencyNanos,
+				SocketAddress remote, String body) {
+			this.time = time;
+			this.method = method;
+			this.uri = uri;
+			this.status = status;
+			this.bytes = bytes;
+			this.latencyNanos = latencyNanos;
+			this.remote = remote;
+			this.body = body;
+		}
+
+		private void clear() {
+			set(0, null, null, 0, 0, 0, null, null);
+		}
+
+		private void format(StringBuilder buf, SimpleDateFormat dateFormat, Date date) {
+			date.setTime(time);
+			buf.append(dateFormat.format(date)).append(' ');
+
+			if (remote instanceof InetSocketAddress && ((InetSocketAddress) remote).getAddress() != null) {
+				buf.append(((InetSocketAddress) remote).getAddress().getHostAddress());
+			}
+			else {
+				buf.append(remote == null ? "-" : remote.toString());
+			}
+
+			buf.append(" \"").append(method).append(' ').append(uri).append("\" ");
+			buf.append(status).append(' ').append(bytes).append(' ');
+
+			long micros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+			long fraction = micros % 1000;
+			buf.append(micros / 1000).append('.');
+			if (fraction < 100) {
+				buf.append(fraction < 10 ? "00" : "0");
+			}
+			buf.append(fraction);
+
+			if (body != null) {
+				buf.append(" \"").append(body.replace("\r", "\\r").replace("\n", "\\n")).append('"');
+			}
+
+			buf.append('\n');
+		}
+	}
+}
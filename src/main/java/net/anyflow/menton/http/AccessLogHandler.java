@@ -0,0 +1,179 @@
+package net.anyflow.menton.http;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import net.anyflow.menton.Settings;
+import net.anyflow.menton.SettingsSnapshot;
+
+/**
+ * Captures the method, URI, status, content bytes written and latency of each
+ * response into the {@link AccessLog}. Placed next to the HTTP codec, so the
+ * bytes are the encoded(compressed) content bytes. Requests are sampled by
+ * menton.logging.accessLog.sampleRate, and the first
+ * menton.logging.accessLog.bodyLimit bytes of the request content are
+ * captured.
+ * <p>
+ * Nothing is formatted on the event loop : formatting is up to the writer of
+ * the access log.
+ *
+ * @author anyflow
+ */
+class AccessLogHandler extends ChannelDuplexHandler {
+
+	/**
+	 * Placeholder of the requests not sampled, which keeps the pairing of
+	 * pipelined requests and responses without allocation.
+	 */
+	private static final Request NOT_SAMPLED = new Request(null, null, 0, 0);
+
+	private final AccessLog accessLog;
+
+	private final Queue<Request> requests = new ArrayDeque<Request>();
+
+	/**
+	 * Request whose content is being captured.
+	 */
+	private Request receiving;
+
+	private Request responding;
+	private int status;
+	private long bytes;
+	private boolean upgraded;
+
+	AccessLogHandler(AccessLog accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (upgraded == false) {
+			if (msg instanceof HttpRequest) {
+				received((HttpRequest) msg);
+			}
+
+			if (msg instanceof HttpContent && receiving != null) {
+				receiving.capture(((HttpContent) msg).content());
+
+				if (msg instanceof LastHttpContent) {
+					receiving = null;
+				}
+			}
+		}
+
+		ctx.fireChannelRead(msg);
+	}
+
+	private void received(HttpRequest request) {
+		SettingsSnapshot settings = Settings.SELF.snapshot();
+
+		if (sampled(settings.accessLogSampleRate()) == false) {
+			requests.add(NOT_SAMPLED);
+			receiving = null;
+			return;
+		}
+
+		Request ret = new Request(request.getMethod(), request.getUri(), System.nanoTime(),
+				settings.accessLogBodyLimit());
+
+		requests.add(ret);
+		receiving = ret.bodyLimit > 0 ? ret : null;
+	}
+
+	private static boolean sampled(double sampleRate) {
+		if (sampleRate >= 1) { return true; }
+		if (sampleRate <= 0) { return false; }
+
+		return ThreadLocalRandom.current().nextDouble() < sampleRate;
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (upgraded == false) {
+			written(ctx, msg);
+		}
+
+		ctx.write(msg, promise);
+	}
+
+	private void written(ChannelHandlerContext ctx, Object msg) {
+		if (msg instanceof HttpResponse) {
+			HttpResponseStatus responseStatus = ((HttpResponse) msg).getStatus();
+
+			if (responseStatus.equals(HttpResponseStatus.CONTINUE)) { return; }
+
+			responding = requests.poll();
+			status = responseStatus.code();
+			bytes = 0;
+			upgraded = responseStatus.equals(HttpResponseStatus.SWITCHING_PROTOCOLS);
+		}
+
+		if (msg instanceof HttpContent) {
+			bytes += ((HttpContent) msg).content().readableBytes();
+		}
+		else if (msg instanceof ByteBuf) {
+			bytes += ((ByteBuf) msg).readableBytes();
+		}
+		else if (msg instanceof FileRegion) {
+			bytes += ((FileRegion) msg).count();
+		}
+
+		if (msg instanceof LastHttpContent || upgraded) {
+			completed(ctx);
+		}
+	}
+
+	private void completed(ChannelHandlerContext ctx) {
+		Request request = responding;
+		responding = null;
+
+		if (request == null || request == NOT_SAMPLED) { return; }
+
+		accessLog.log(request.method, request.uri, status, bytes, System.nanoTime() - request.startNanos,
+				ctx.channel().remoteAddress(), request.body());
+	}
+
+	private static final class Request {
+		private final HttpMethod method;
+		private final String uri;
+		private final long startNanos;
+		private final int bodyLimit;
+		private StringBuilder body;
+
+		private Request(HttpMethod method, String uri, long startNanos, int bodyLimit) {
+			this.method = method;
+			this.uri = uri;
+			this.startNanos = startNanos;
+			this.bodyLimit = bodyLimit;
+		}
+
+		private void capture(ByteBuf content) {
+			int remaining = bodyLimit - (body == null ? 0 : body.length());
+			if (remaining <= 0 || content.isReadable() == false) { return; }
+
+			if (body == null) {
+				body = new StringBuilder();
+			}
+
+			body.append(content.toString(content.readerIndex(), Math.min(remaining, content.readableBytes()),
+					CharsetUtil.UTF_8));
+		}
+
+		private String body() {
+			return body == null ? null : body.toString();
+		}
+	}
+}
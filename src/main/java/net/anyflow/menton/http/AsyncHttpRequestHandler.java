@@ -0,0 +1,51 @@
+package net.anyflow.menton.http;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Base class for asynchronous request handler.
+ * {@link #serviceAsync(HttpRequest, HttpResponse)} is called instead of
+ * service and the response is written on completion of the returned future. No
+ * thread is held while waiting for downstream I/O. On timeout(
+ * {@link HttpRequestHandler.Handles#timeout()}), the future is cancelled and
+ * 504 is responded.
+ * <p>
+ * The handler can be SINGLETON scope, so it should use the arguments instead
+ * of {@link #httpRequest()} and {@link #httpResponse()}.
+ * 
+ * @author anyflow
+ */
+public abstract class AsyncHttpRequestHandler extends HttpRequestHandler {
+
+	/**
+	 * Asynchronous business logic of the handler.
+	 * 
+	 * @param request
+	 *            HTTP request
+	 * @param response
+	 *            HTTP response. Valid until the future completes or is
+	 *            cancelled on timeout.
+	 * @return future of processed response body string. Completed on any
+	 *         thread. Failures should be reported via the future.
+	 */
+	public abstract ListenableFuture<String> serviceAsync(HttpRequest request, HttpResponse response);
+
+	/**
+	 * Blocks until the future of {@link #serviceAsync(HttpRequest, HttpResponse)}
+	 * completes. Not called by the router, but by synchronous servers like
+	 * {@link MockHttpServer}.
+	 */
+	@Override
+	public final String service(HttpRequest request, HttpResponse response) {
+		return Futures.getUnchecked(serviceAsync(request, response));
+	}
+
+	/**
+	 * @see #service(HttpRequest, HttpResponse)
+	 */
+	@Override
+	public final String service() {
+		return service(httpRequest(), httpResponse());
+	}
+}
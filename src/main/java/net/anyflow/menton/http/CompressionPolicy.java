@@ -0,0 +1,202 @@
+package net.anyflow.menton.http;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import net.anyflow.menton.Settings;
+import net.anyflow.menton.SettingsListener;
+import net.anyflow.menton.SettingsSnapshot;
+
+/**
+ * Decides which responses are compressed by {@link ContentCompressor} and
+ * collects the compression metrics.
+ * <p>
+ * Configured by settings below.
+ * <ul>
+ * <li>menton.httpServer.compression.enabled : false disables the compression
+ * (default true).</li>
+ * <li>menton.httpServer.compression.minSize : responses smaller than this
+ * bytes are not compressed(default 1024).</li>
+ * <li>menton.httpServer.compression.mimeTypes : comma separated allowlist of
+ * content types. An entry ending with '/' matches the whole type(e.g.
+ * text/).</li>
+ * <li>menton.httpServer.compression.level : zlib compression level 1~9
+ * (default 6).</li>
+ * </ul>
+ * Handlers can opt out by {@link HttpRequestHandler.Handles#compress()}.
+ * <p>
+ * On settings change, {@link #instance()} is replaced by a new policy which
+ * shares the metrics. Connections opened after the change use the new one.
+ *
+ * @author anyflow
+ */
+public class CompressionPolicy {
+
+	private static final String DEFAULT_MIME_TYPES = "text/,application/json,application/javascript,application/xml,image/svg+xml";
+
+	private static volatile CompressionPolicy instance;
+
+	private final boolean enabled;
+	private final int minSize;
+	private final int level;
+	private final List<String> mimeTypes;
+
+	private final AtomicLong compressedCount;
+	private final AtomicLong skippedCount;
+	private final AtomicLong bytesIn;
+	private final AtomicLong bytesOut;
+	private final AtomicLong compressionNanos;
+
+	/**
+	 * @return the policy configured by the settings on the first call.
+	 */
+	public static CompressionPolicy instance() {
+		if (instance != null) { return instance; }
+
+		synchronized (CompressionPolicy.class) {
+			if (instance == null) {
+				instance = fromSettings(null);
+
+				Settings.SELF.register(new SettingsListener() {
+					@Override
+					public void settingsChanged(SettingsSnapshot previous, SettingsSnapshot current) {
+						synchronized (CompressionPolicy.class) {
+							instance = fromSettings(instance);
+						}
+					}
+				});
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * @param metrics
+	 *            policy whose metrics are shared. nullable.
+	 */
+	private static CompressionPolicy fromSettings(CompressionPolicy metrics) {
+		return new CompressionPolicy(Settings.SELF.getBoolean("menton.httpServer.compression.enabled", true),
+				Settings.SELF.getInt("menton.httpServer.compression.minSize", 1024),
+				Settings.SELF.getInt("menton.httpServer.compression.level", 6),
+				Settings.SELF.getProperty("menton.httpServer.compression.mimeTypes", DEFAULT_MIME_TYPES), metrics);
+	}
+
+	CompressionPolicy(boolean enabled, int minSize, int level, String mimeTypes) {
+		this(enabled, minSize, level, mimeTypes, null);
+	}
+
+	private CompressionPolicy(boolean enabled, int minSize, int level, String mimeTypes, CompressionPolicy metrics) {
+		this.enabled = enabled;
+		this.minSize = minSize;
+		this.level = Math.min(Math.max(level, 1), 9);
+		this.mimeTypes = ImmutableList
+				.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(mimeTypes.toLowerCase()));
+
+		this.compressedCount = metrics == null ? new AtomicLong() : metrics.compressedCount;
+		this.skippedCount = metrics == null ? new AtomicLong() : metrics.skippedCount;
+		this.bytesIn = metrics == null ? new AtomicLong() : metrics.bytesIn;
+		this.bytesOut = metrics == null ? new AtomicLong() : metrics.bytesOut;
+		this.compressionNanos = metrics == null ? new AtomicLong() : metrics.compressionNanos;
+	}
+
+	int level() {
+		return level;
+	}
+
+	/**
+	 * @param response
+	 *            response headers(or full response)
+	 * @return whether the response should be compressed. Skipped responses
+	 *         are counted.
+	 */
+	boolean compressible(HttpResponse response) {
+		if (enabled && sizeAllowed(response) && typeAllowed(response.headers().get(Names.CONTENT_TYPE))) {
+			return true;
+		}
+
+		skippedCount.incrementAndGet();
+		return false;
+	}
+
+	void skipped() {
+		skippedCount.incrementAndGet();
+	}
+
+	private boolean sizeAllowed(HttpResponse response) {
+		long size = response instanceof LastHttpContent ? ((LastHttpContent) response).content().readableBytes()
+				: HttpHeaders.getContentLength(response, Long.MAX_VALUE);
+
+		return size >= minSize;
+	}
+
+	private boolean typeAllowed(String contentType) {
+		if (contentType == null) { return false; }
+
+		int index = contentType.indexOf(';');
+		String type = (index < 0 ? contentType : contentType.substring(0, index)).trim().toLowerCase();
+
+		for (String item : mimeTypes) {
+			if (item.endsWith("/") ? type.startsWith(item) : type.equals(item)) { return true; }
+		}
+
+		return false;
+	}
+
+	void record(long inputBytes, long outputBytes, long nanos) {
+		bytesIn.addAndGet(inputBytes);
+		bytesOut.addAndGet(outputBytes);
+		compressionNanos.addAndGet(nanos);
+	}
+
+	void compressed() {
+		compressedCount.incrementAndGet();
+	}
+
+	/**
+	 * @return count of compressed responses.
+	 */
+	public long compressedCount() {
+		return compressedCount.get();
+	}
+
+	/**
+	 * @return count of responses which were not compressed by the policy or
+	 *         the handler opt-out.
+	 */
+	public long skippedCount() {
+		return skippedCount.get();
+	}
+
+	/**
+	 * @return uncompressed bytes of the compressed responses.
+	 */
+	public long bytesIn() {
+		return bytesIn.get();
+	}
+
+	/**
+	 * @return compressed bytes of the compressed responses.
+	 */
+	public long bytesOut() {
+		return bytesOut.get();
+	}
+
+	public long bytesSaved() {
+		return bytesIn.get() - bytesOut.get();
+	}
+
+	/**
+	 * @return time spent in compression on the event loops in nanoseconds.
+	 */
+	public long compressionNanos() {
+		return compressionNanos.get();
+	}
+}
@@ -0,0 +1,124 @@
+package net.anyflow.menton.http;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * HttpContentCompressor applying {@link CompressionPolicy}. It passes through
+ * <ul>
+ * <li>fixed length streamed responses. Bodies of those(file regions, chunked
+ * files or streams) are written as raw buffers which the compressor can not
+ * encode.</li>
+ * <li>responses marked by the handler opt-out({@link #NO_COMPRESSION} header).
+ * The internal header is always removed, so it never reaches the client.</li>
+ * <li>responses the policy does not allow(size, content type).</li>
+ * </ul>
+ *
+ * @author anyflow
+ */
+class ContentCompressor extends HttpContentCompressor {
+
+	/**
+	 * Internal response header marking the handler opt-out.
+	 */
+	static final CharSequence NO_COMPRESSION = HttpHeaders.newEntity("X-Menton-No-Compression");
+
+	private final CompressionPolicy policy;
+
+	/**
+	 * Whether the response being encoded is opted out. {@link #beginEncode} is
+	 * called inside {@link #encode} of the response.
+	 */
+	private boolean optedOut;
+
+	ContentCompressor() {
+		this(CompressionPolicy.instance());
+	}
+
+	ContentCompressor(CompressionPolicy policy) {
+		super(policy.level());
+
+		this.policy = policy;
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+		if (msg instanceof HttpResponse) {
+			// removed here, not in beginEncode : it is skipped for HEAD, 1xx,
+			// 204 and 304.
+			optedOut = ((HttpResponse) msg).headers().contains(NO_COMPRESSION);
+
+			if (optedOut) {
+				((HttpResponse) msg).headers().remove(NO_COMPRESSION);
+			}
+		}
+
+		super.encode(ctx, msg, out);
+	}
+
+	@Override
+	protected Result beginEncode(HttpResponse headers, String acceptEncoding) throws Exception {
+		if (headers instanceof LastHttpContent == false && HttpHeaders.isContentLengthSet(headers)) { return null; }
+
+		if (optedOut) {
+			policy.skipped();
+			return null;
+		}
+
+		if (headers.headers().contains(Names.CONTENT_ENCODING) || policy.compressible(headers) == false) {
+			return null;
+		}
+
+		Result ret = super.beginEncode(headers, acceptEncoding);
+		if (ret == null) { return null; }
+
+		policy.compressed();
+
+		Meter meter = new Meter();
+		ret.contentEncoder().pipeline().addFirst(meter.output);
+		ret.contentEncoder().pipeline().addLast(meter.input);
+
+		return ret;
+	}
+
+	/**
+	 * Measures bytes and time of the content encoder. Input handler is called
+	 * first on write, the encoder encodes synchronously and output handler is
+	 * called with the encoded.
+	 */
+	private class Meter {
+
+		private final ChannelOutboundHandlerAdapter input = new ChannelOutboundHandlerAdapter() {
+			@Override
+			public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+				long size = msg instanceof ByteBuf ? ((ByteBuf) msg).readableBytes() : 0;
+				long start = System.nanoTime();
+
+				ctx.write(msg, promise);
+
+				policy.record(size, 0, System.nanoTime() - start);
+			}
+		};
+
+		private final ChannelOutboundHandlerAdapter output = new ChannelOutboundHandlerAdapter() {
+			@Override
+			public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+				if (msg instanceof ByteBuf) {
+					policy.record(0, ((ByteBuf) msg).readableBytes(), 0);
+				}
+
+				ctx.write(msg, promise);
+			}
+		};
+	}
+}
@@ -0,0 +1,138 @@
+package net.anyflow.menton.http;
+
+import java.util.Locale;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import net.anyflow.menton.Settings;
+import net.anyflow.menton.SettingsListener;
+import net.anyflow.menton.SettingsSnapshot;
+
+/**
+ * Cross domain(CORS) policy of the server. Configured by settings below.
+ * <ul>
+ * <li>menton.httpServer.allowCrossDomain : true enables CORS(default
+ * false).</li>
+ * <li>menton.httpServer.cors.allowedOrigins : comma separated origins(e.g.
+ * https://example.com) allowed. '*' allows any origin(default).</li>
+ * <li>menton.httpServer.cors.allowedMethods : Access-Control-Allow-Methods of
+ * preflight responses.</li>
+ * <li>menton.httpServer.cors.allowedHeaders : Access-Control-Allow-Headers of
+ * preflight responses.</li>
+ * <li>menton.httpServer.cors.maxAge : seconds clients may cache the preflight
+ * result(Access-Control-Max-Age).</li>
+ * </ul>
+ * Preflight(OPTIONS) requests are answered by the server without handlers.
+ * Responses to allowed origins get Access-Control-Allow-Origin.
+ *
+ * @author anyflow
+ */
+public class CorsPolicy {
+
+	private static final CharSequence ALLOW_ORIGIN = HttpHeaders.newEntity(Names.ACCESS_CONTROL_ALLOW_ORIGIN);
+	private static final CharSequence ANY_ORIGIN = HttpHeaders.newEntity("*");
+	private static final CharSequence VARY = HttpHeaders.newEntity(Names.VARY);
+	private static final CharSequence ORIGIN = HttpHeaders.newEntity(Names.ORIGIN);
+
+	private static volatile CorsPolicy instance;
+
+	private final boolean enabled;
+	private final boolean anyOrigin;
+	private final Set<String> allowedOrigins;
+	private final HeaderBlock preflightHeaders;
+
+	/**
+	 * @return the policy of the current settings.
+	 */
+	public static CorsPolicy instance() {
+		if (instance != null) { return instance; }
+
+		synchronized (CorsPolicy.class) {
+			if (instance == null) {
+				instance = fromSettings(Settings.SELF.snapshot());
+
+				Settings.SELF.register(new SettingsListener() {
+					@Override
+					public void settingsChanged(SettingsSnapshot previous, SettingsSnapshot current) {
+						instance = fromSettings(current);
+					}
+				});
+			}
+		}
+
+		return instance;
+	}
+
+	private static CorsPolicy fromSettings(SettingsSnapshot settings) {
+		return new CorsPolicy(settings.allowCrossDomain(), settings.corsAllowedOrigins(),
+				settings.corsAllowedMethods(), settings.corsAllowedHeaders(), settings.corsMaxAge());
+	}
+
+	/**
+	 * @param allowedOrigins
+	 *            origins allowed. "*" means any origin.
+	 */
+	CorsPolicy(boolean enabled, Set<String> allowedOrigins, String allowedMethods, String allowedHeaders,
+			int maxAge) {
+		this.enabled = enabled;
+		this.anyOrigin = allowedOrigins.contains("*");
+		this.allowedOrigins = ImmutableSet.copyOf(allowedOrigins);
+		this.preflightHeaders = new HeaderBlock(ImmutableMap.of(Names.ACCESS_CONTROL_ALLOW_METHODS, allowedMethods,
+				Names.ACCESS_CONTROL_ALLOW_HEADERS, allowedHeaders, Names.ACCESS_CONTROL_MAX_AGE,
+				Integer.toString(maxAge)));
+	}
+
+	/**
+	 * @return whether the request is a CORS preflight request.
+	 */
+	boolean isPreflight(HttpRequest request) {
+		return enabled && HttpMethod.OPTIONS.equals(request.getMethod()) && request.headers().contains(Names.ORIGIN)
+				&& request.headers().contains(Names.ACCESS_CONTROL_REQUEST_METHOD);
+	}
+
+	/**
+	 * Sets Access-Control-Allow-Origin if the origin of the request is
+	 * allowed.
+	 */
+	void apply(HttpRequest request, HttpResponse response) {
+		if (enabled == false) { return; }
+
+		if (anyOrigin) {
+			response.headers().set(ALLOW_ORIGIN, ANY_ORIGIN);
+			return;
+		}
+
+		String origin = request.headers().get(Names.ORIGIN);
+		if (isAllowed(origin) == false) { return; }
+
+		response.headers().set(ALLOW_ORIGIN, origin);
+		response.headers().add(VARY, ORIGIN);
+	}
+
+	/**
+	 * Makes the preflight response. Forbidden if the origin is not allowed.
+	 * Access-Control-Allow-Origin is set by {@link #apply}.
+	 */
+	void preflight(HttpRequest request, HttpResponse response) {
+		response.headers().remove(Names.CONTENT_TYPE);
+
+		if (anyOrigin == false && isAllowed(request.headers().get(Names.ORIGIN)) == false) {
+			response.setStatus(HttpResponseStatus.FORBIDDEN);
+			return;
+		}
+
+		preflightHeaders.apply(response.headers());
+	}
+
+	private boolean isAllowed(String origin) {
+		return origin != null && allowedOrigins.contains(origin.toLowerCase(Locale.ENGLISH));
+	}
+}
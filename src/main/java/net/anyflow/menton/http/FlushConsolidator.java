@@ -0,0 +1,158 @@
+package net.anyflow.menton.http;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.Future;
+
+/**
+ * Coalesces flushes to reduce write syscalls(and TLS records) of the
+ * connection.
+ * <ul>
+ * <li>While a read is in progress, flushes are deferred to the end of the
+ * read(channelReadComplete), so the responses of the requests in a read are
+ * written at once.</li>
+ * <li>Out of reads(responses of worker or async handlers), flushes are
+ * deferred to a task on the event loop if consolidateWhenNotReading is set,
+ * so the responses completed meanwhile are written at once. Otherwise they
+ * are passed immediately.</li>
+ * <li>The pending writes are flushed anyway on every maxFlushes-th flush, and
+ * when the channel turns unwritable or is closed.</li>
+ * </ul>
+ * Should be the first handler of the pipeline.
+ *
+ * @author anyflow
+ */
+class FlushConsolidator extends ChannelDuplexHandler {
+
+	private final int maxFlushes;
+	private final boolean consolidateWhenNotReading;
+	private final Runnable flushTask;
+
+	private ChannelHandlerContext ctx;
+	private int flushCount;
+	private boolean readInProgress;
+	private Future<?> scheduledFlush;
+
+	/**
+	 * @param maxFlushes
+	 *            flushes consolidated into one at most
+	 * @param consolidateWhenNotReading
+	 *            whether flushes out of reads are consolidated too
+	 */
+	FlushConsolidator(int maxFlushes, boolean consolidateWhenNotReading) {
+		if (maxFlushes <= 0) { throw new IllegalArgumentException("maxFlushes should be positive : " + maxFlushes); }
+
+		this.maxFlushes = maxFlushes;
+		this.consolidateWhenNotReading = consolidateWhenNotReading;
+		this.flushTask = consolidateWhenNotReading ? new Runnable() {
+			@Override
+			public void run() {
+				scheduledFlush = null;
+
+				if (flushCount > 0 && readInProgress == false) {
+					flushNow(ctx);
+				}
+			}
+		} : null;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		if (readInProgress) {
+			if (++flushCount == maxFlushes) {
+				flushNow(ctx);
+			}
+			return;
+		}
+
+		if (consolidateWhenNotReading) {
+			if (++flushCount == maxFlushes) {
+				flushNow(ctx);
+			}
+			else if (scheduledFlush == null) {
+				scheduledFlush = ctx.channel().eventLoop().submit(flushTask);
+			}
+			return;
+		}
+
+		flushNow(ctx);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		readInProgress = true;
+
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		resetReadAndFlushIfNeeded(ctx);
+
+		ctx.fireChannelReadComplete();
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		resetReadAndFlushIfNeeded(ctx);
+
+		ctx.fireExceptionCaught(cause);
+	}
+
+	@Override
+	public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+		resetReadAndFlushIfNeeded(ctx);
+
+		ctx.disconnect(promise);
+	}
+
+	@Override
+	public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+		resetReadAndFlushIfNeeded(ctx);
+
+		ctx.close(promise);
+	}
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.channel().isWritable() == false) {
+			// let the pending writes drain.
+			flushIfNeeded(ctx);
+		}
+
+		ctx.fireChannelWritabilityChanged();
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		flushIfNeeded(ctx);
+	}
+
+	private void resetReadAndFlushIfNeeded(ChannelHandlerContext ctx) {
+		readInProgress = false;
+
+		flushIfNeeded(ctx);
+	}
+
+	private void flushIfNeeded(ChannelHandlerContext ctx) {
+		if (flushCount > 0) {
+			flushNow(ctx);
+		}
+	}
+
+	private void flushNow(ChannelHandlerContext ctx) {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+
+		flushCount = 0;
+		ctx.flush();
+	}
+}
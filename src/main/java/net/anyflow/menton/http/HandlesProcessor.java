@@ -0,0 +1,163 @@
+package net.anyflow.menton.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Maps;
+
+/**
+ * Annotation processor which writes the route manifest of
+ * {@link HttpRequestHandler.Handles} annotated classes into
+ * {@value RouteTable#MANIFEST_PATH} on compile time. On server start, the
+ * manifest is loaded instead of scanning classpath.
+ * <p>
+ * The processor is registered via META-INF/services, so it runs on compiling
+ * sources which have menton on their classpath. Each line of the manifest is
+ * <code>class name, paths, HTTP methods, web resource path</code> separated by
+ * tab. Multiple paths or methods are separated by comma.
+ * <p>
+ * SINGLETON scope handlers which are not stateless are reported as compile
+ * errors. Missing service methods are compile errors of javac itself, as they
+ * are abstract.
+ * <p>
+ * On incremental compile, the entries of the previous manifest are kept for the
+ * classes which are not compiled, unless the class no longer exists or no
+ * longer carries the annotation. The processor runs on every compile(not only
+ * when the annotation is present), so that the entry of a class which just
+ * lost the annotation is dropped.
+ *
+ * @author anyflow
+ */
+@SupportedAnnotationTypes("*")
+public class HandlesProcessor extends AbstractProcessor {
+
+	private final Map<String, String> entries = Maps.newTreeMap();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(HttpRequestHandler.Handles.class)) {
+			if (element.getKind() != ElementKind.CLASS) {
+				continue;
+			}
+
+			HttpRequestHandler.Handles handles = element.getAnnotation(HttpRequestHandler.Handles.class);
+			String className = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+
+			validate((TypeElement) element, handles);
+
+			entries.put(className, Joiner.on('\t').join(className, Joiner.on(',').join(handles.paths()),
+					Joiner.on(',').join(handles.httpMethods()), handles.webResourcePath()));
+		}
+
+		if (roundEnv.processingOver()) {
+			writeManifest();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Reports SINGLETON scope handler which extends neither
+	 * {@link StatelessHttpRequestHandler} nor {@link AsyncHttpRequestHandler}
+	 * as a compile error. Same rule as
+	 * {@link RouteTable#validate(Class, HttpRequestHandler.Handles)}.
+	 */
+	private void validate(TypeElement handler, HttpRequestHandler.Handles handles) {
+		if (handles.scope() != HttpRequestHandler.Scope.SINGLETON) { return; }
+		if (extendsType(handler, StatelessHttpRequestHandler.class)
+				|| extendsType(handler, AsyncHttpRequestHandler.class)) { return; }
+
+		processingEnv.getMessager().printMessage(Kind.ERROR, handler.getSimpleName()
+				+ " is SINGLETON scope but extends neither StatelessHttpRequestHandler nor AsyncHttpRequestHandler.",
+				handler);
+	}
+
+	private boolean extendsType(TypeElement handler, Class<?> superclass) {
+		Types types = processingEnv.getTypeUtils();
+		TypeElement type = processingEnv.getElementUtils().getTypeElement(superclass.getName());
+
+		return type != null && types.isSubtype(types.erasure(handler.asType()), types.erasure(type.asType()));
+	}
+
+	/**
+	 * @param className
+	 *            binary name of the class in the previous manifest
+	 * @return whether the class(compiled now or in classpath) still carries
+	 *         the annotation.
+	 */
+	private boolean handles(String className) {
+		TypeElement type = processingEnv.getElementUtils().getTypeElement(className.replace('$', '.'));
+
+		return type != null && type.getAnnotation(HttpRequestHandler.Handles.class) != null;
+	}
+
+	private void writeManifest() {
+		boolean existed = false;
+
+		// Keeps the entries of classes which are not compiled in this turn(incremental compile).
+		try {
+			FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+					RouteTable.MANIFEST_PATH);
+
+			try (BufferedReader reader = new BufferedReader(existing.openReader(true))) {
+				existed = true;
+
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String className = line.split("\t", 2)[0];
+
+					if (line.startsWith("#") || className.isEmpty() || entries.containsKey(className)
+							|| handles(className) == false) {
+						continue;
+					}
+
+					entries.put(className, line);
+				}
+			}
+		}
+		catch (IOException e) {
+			// no previous manifest.
+		}
+
+		if (entries.isEmpty() && existed == false) { return; }
+
+		try {
+			FileObject manifest = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					RouteTable.MANIFEST_PATH);
+
+			try (Writer writer = new OutputStreamWriter(manifest.openOutputStream(), Charsets.UTF_8)) {
+				for (String entry : entries.values()) {
+					writer.write(entry);
+					writer.write('\n');
+				}
+			}
+		}
+		catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR,
+					"Failed to write " + RouteTable.MANIFEST_PATH + " : " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package net.anyflow.menton.http;
+
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * Immutable block of headers whose names and values are prebuilt header
+ * entities({@link HttpHeaders#newEntity(String)}), i.e. hashed and encoded
+ * once. Applied to a response in one pass.
+ *
+ * @author anyflow
+ */
+final class HeaderBlock {
+
+	static final HeaderBlock EMPTY = new HeaderBlock(ImmutableMap.<String, String> of());
+
+	private final CharSequence[] names;
+	private final CharSequence[] values;
+
+	/**
+	 * @param headers
+	 *            header names and values in order
+	 */
+	HeaderBlock(Map<String, String> headers) {
+		names = new CharSequence[headers.size()];
+		values = new CharSequence[headers.size()];
+
+		int i = 0;
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			names[i] = HttpHeaders.newEntity(header.getKey());
+			values[i] = HttpHeaders.newEntity(header.getValue());
+			++i;
+		}
+	}
+
+	/**
+	 * Sets the headers. Existing values of the same names are replaced.
+	 */
+	void apply(HttpHeaders headers) {
+		for (int i = 0; i < names.length; ++i) {
+			headers.set(names[i], values[i]);
+		}
+	}
+}
@@ -4,46 +4,35 @@
 package net.anyflow.menton.http;
 
 import java.net.URISyntaxException;
-
-import javax.net.ssl.TrustManagerFactory;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.ChannelInitializer;
+import com.google.common.collect.Maps;
+
 import io.netty.channel.ChannelOption;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
-import io.netty.handler.codec.http.HttpClientCodec;
-import io.netty.handler.codec.http.HttpContentDecompressor;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
-import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpVersion;
-import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
-import io.netty.util.concurrent.DefaultThreadFactory;
-import net.anyflow.menton.Settings;
+import io.netty.util.concurrent.Future;
 
 /**
+ * HTTP(S) client. Requests are sent on keep-alive connections borrowed from
+ * {@link HttpClientPool}. Channel options set by
+ * {@link #setOption(ChannelOption, Object)} apply to the connections of the
+ * client, which are pooled apart from others.
+ * 
  * @author anyflow
  */
 public class HttpClient implements IHttpClient {
 
 	static final Logger logger = LoggerFactory.getLogger(HttpClient.class);
 
-	final Bootstrap bootstrap;
 	private final HttpRequest httpRequest;
-	private final TrustManagerFactory trustManagerFactory;
+	private final boolean useInsecureTrustManagerFactory;
+	private final Map<ChannelOption<?>, Object> options = Maps.newLinkedHashMap();
 
 	public HttpClient(String uri) throws UnsupportedOperationException, URISyntaxException {
 		this(uri, false);
@@ -51,14 +40,12 @@ public class HttpClient implements IHttpClient {
 
 	public HttpClient(String uri, boolean useInsecureTrustManagerFactory)
 			throws URISyntaxException, UnsupportedOperationException {
-		trustManagerFactory = useInsecureTrustManagerFactory ? InsecureTrustManagerFactory.INSTANCE : null;
-
-		bootstrap = new Bootstrap();
+		this.useInsecureTrustManagerFactory = useInsecureTrustManagerFactory;
 
 		httpRequest = new HttpRequest(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri));
 
-		if (httpRequest().uri().getScheme().equalsIgnoreCase("http") == false
-				&& httpRequest().uri().getScheme().equalsIgnoreCase("https") == false) {
+		if (httpRequest().normalizedUri().getScheme().equalsIgnoreCase("http") == false
+				&& httpRequest().normalizedUri().getScheme().equalsIgnoreCase("https") == false) {
 			String message = "HTTP(S) is supported only.";
 			logger.error(message);
 			throw new UnsupportedOperationException(message);
@@ -175,7 +162,7 @@ public class HttpClient implements IHttpClient {
 	 */
 	@Override
 	public <T> IHttpClient setOption(ChannelOption<T> option, T value) {
-		bootstrap.option(option, value);
+		options.put(option, value);
 
 		return this;
 	}
@@ -196,66 +183,22 @@ public class HttpClient implements IHttpClient {
 			logger.debug(httpRequest().toString());
 		}
 
-		final HttpClientHandler clientHandler = new HttpClientHandler(receiver, httpRequest);
-
-		final EventLoopGroup group = new NioEventLoopGroup(1, new DefaultThreadFactory("client"));
-		bootstrap.group(group).channel(NioSocketChannel.class).handler(new ChannelInitializer<SocketChannel>() {
-			@Override
-			protected void initChannel(SocketChannel ch) throws Exception {
-
-				if ("true".equalsIgnoreCase(Settings.SELF.getProperty("menton.logging.writelogOfNettyLogger"))) {
-					ch.pipeline().addLast("log", new LoggingHandler("menton/client", Settings.SELF.logLevel()));
-				}
-
-				if ("https".equalsIgnoreCase(httpRequest().uri().getScheme())) {
-					SslContext sslCtx = SslContextBuilder.forClient().trustManager(trustManagerFactory).build();
-
-					ch.pipeline().addLast(sslCtx.newHandler(ch.alloc(), httpRequest().uri().getHost(),
-							httpRequest().uri().getPort()));
-				}
-
-				ch.pipeline().addLast("codec", new HttpClientCodec());
-				ch.pipeline().addLast("inflater", new HttpContentDecompressor());
-				ch.pipeline().addLast("chunkAggregator", new HttpObjectAggregator(1048576));
-				ch.pipeline().addLast("handler", clientHandler);
-			}
-		});
-
-		try {
-			Channel channel = bootstrap.connect(httpRequest().uri().getHost(), httpRequest().uri().getPort()).sync()
-					.channel();
-			channel.writeAndFlush(httpRequest);
-
-			if (receiver == null) {
-				channel.closeFuture().sync();
-				group.shutdownGracefully();
-
-				return clientHandler.httpResponse();
-			}
-			else {
-				channel.closeFuture().addListener(new ChannelFutureListener() {
-
-					@Override
-					public void operationComplete(ChannelFuture future) throws Exception {
-						group.shutdownGracefully();
-					}
-				});
-
-				return null;
-			}
-		}
-		catch (Exception e) {
-			group.shutdownGracefully();
-			logger.error(e.getMessage(), e);
+		Future<HttpResponse> future = HttpClientPool.instance().request(httpRequest, useInsecureTrustManagerFactory,
+				options, receiver);
+
+		if (receiver != null) { return null; }
 
+		if (future.awaitUninterruptibly().isSuccess() == false) {
+			logger.error(future.cause().getMessage(), future.cause());
 			return null;
 		}
 
+		return future.getNow();
 	}
 
 	private void setDefaultHeaders() {
 		if (httpRequest().headers().contains(HttpHeaders.Names.HOST) == false) {
-			httpRequest().headers().set(HttpHeaders.Names.HOST, httpRequest().uri().getHost());
+			httpRequest().headers().set(HttpHeaders.Names.HOST, httpRequest().normalizedUri().getHost());
 		}
 		if (httpRequest().headers().contains(HttpHeaders.Names.CONNECTION) == false) {
 			httpRequest().headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
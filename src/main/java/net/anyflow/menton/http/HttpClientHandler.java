@@ -3,14 +3,23 @@
  */
 package net.anyflow.menton.http;
 
+import java.nio.channels.ClosedChannelException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.pool.ChannelPool;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.concurrent.Promise;
 
 /**
+ * Handler of a request on a pooled connection. It removes itself and returns
+ * the connection to the pool on the response, closing it unless both sides
+ * keep alive.
+ * 
  * @author anyflow
  */
 public class HttpClientHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
@@ -19,11 +28,15 @@ public class HttpClientHandler extends SimpleChannelInboundHandler<FullHttpRespo
 
 	private final MessageReceiver receiver;
 	private final HttpRequest request;
+	private final ChannelPool pool;
+	private final Promise<HttpResponse> promise;
 	private HttpResponse response;
 
-	public HttpClientHandler(MessageReceiver receiver, HttpRequest request) {
+	HttpClientHandler(MessageReceiver receiver, HttpRequest request, ChannelPool pool, Promise<HttpResponse> promise) {
 		this.receiver = receiver;
 		this.request = request;
+		this.pool = pool;
+		this.promise = promise;
 	}
 
 	public HttpResponse httpResponse() {
@@ -38,24 +51,46 @@ public class HttpClientHandler extends SimpleChannelInboundHandler<FullHttpRespo
 	 */
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) throws Exception {
-		if (ctx.channel().isActive() == false) { return; }
-
 		response = HttpResponse.createFrom(msg, ctx.channel());
 
 		if (logger.isDebugEnabled()) {
 			logger.debug(response.toString());
 		}
 
+		giveBack(ctx, HttpHeaders.isKeepAlive(msg) && HttpHeaders.isKeepAlive(request));
+
 		if (receiver != null) {
 			receiver.messageReceived(request, response);
 		}
 
-		ctx.channel().close();
+		promise.trySuccess(response);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		if (promise.tryFailure(new ClosedChannelException())) {
+			giveBack(ctx, false);
+		}
+
+		ctx.fireChannelInactive();
 	}
 
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
 		logger.error(cause.getMessage(), cause);
-		ctx.channel().close();
+
+		if (promise.tryFailure(cause)) {
+			giveBack(ctx, false);
+		}
+	}
+
+	private void giveBack(ChannelHandlerContext ctx, boolean reusable) {
+		ctx.pipeline().remove(this);
+
+		if (reusable == false) {
+			ctx.channel().close();
+		}
+
+		pool.release(ctx.channel());
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,300 @@
+package net.anyflow.menton.http;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+import net.anyflow.menton.Settings;
+
+/**
+ * Shared event loop group and keep-alive connection pools of
+ * {@link HttpClient}. Connections are pooled per (scheme, host, port, trust
+ * manager, channel options) and returned to the pool after each response
+ * unless either side asked to close.
+ * <p>
+ * Configured by settings below.
+ * <ul>
+ * <li>menton.httpClient.threadCount : event loop thread count(default 0 :
+ * Netty default).</li>
+ * <li>menton.httpClient.maxConnectionsPerHost : connections opened to a host
+ * at most. Exceeding requests wait for a connection to be returned(default
+ * 16).</li>
+ * <li>menton.httpClient.acquireTimeout : milliseconds to wait for a connection
+ * before the request fails(default 10000).</li>
+ * <li>menton.httpClient.idleTimeout : seconds a connection may stay silent
+ * before it is closed, either in the pool or waiting for a response(default
+ * 60).</li>
+ * </ul>
+ *
+ * @author anyflow
+ */
+public class HttpClientPool {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HttpClientPool.class);
+
+	private static final String CONNECTION_HANDLER = "connection";
+
+	private static volatile HttpClientPool instance;
+
+	private final EventLoopGroup group;
+	private final Bootstrap bootstrap;
+	private final int maxConnectionsPerHost;
+	private final long acquireTimeout;
+	private final int idleTimeout;
+
+	private volatile SslContext sslContext;
+	private volatile SslContext insecureSslContext;
+
+	private final AbstractChannelPoolMap<Key, FixedChannelPool> pools = new AbstractChannelPoolMap<Key, FixedChannelPool>() {
+		@Override
+		protected FixedChannelPool newPool(Key key) {
+			Bootstrap ret = bootstrap.clone().remoteAddress(key.host, key.port);
+
+			for (Map.Entry<ChannelOption<?>, Object> option : key.options.entrySet()) {
+				@SuppressWarnings("unchecked")
+				ChannelOption<Object> name = (ChannelOption<Object>) option.getKey();
+
+				ret.option(name, option.getValue());
+			}
+
+			return new FixedChannelPool(ret, new PoolHandler(key), ChannelHealthChecker.ACTIVE,
+					FixedChannelPool.AcquireTimeoutAction.FAIL, acquireTimeout, maxConnectionsPerHost,
+					Integer.MAX_VALUE);
+		}
+	};
+
+	/**
+	 * @return the pool configured by the settings on the first call.
+	 */
+	public static HttpClientPool instance() {
+		if (instance != null) { return instance; }
+
+		synchronized (HttpClientPool.class) {
+			if (instance == null) {
+				instance = new HttpClientPool(Settings.SELF.getInt("menton.httpClient.threadCount", 0),
+						Settings.SELF.getInt("menton.httpClient.maxConnectionsPerHost", 16),
+						Settings.SELF.getInt("menton.httpClient.acquireTimeout", 10000),
+						Settings.SELF.getInt("menton.httpClient.idleTimeout", 60));
+			}
+		}
+
+		return instance;
+	}
+
+	HttpClientPool(int threadCount, int maxConnectionsPerHost, long acquireTimeout, int idleTimeout) {
+		Transport transport = Transport.select();
+
+		this.group = transport.newEventLoopGroup(threadCount, new DefaultThreadFactory("client", true));
+		this.bootstrap = new Bootstrap().group(group).channel(transport.socketChannelClass());
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.acquireTimeout = acquireTimeout;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Sends the request on a pooled connection.
+	 *
+	 * @param request
+	 *            normalized request. It is released when written.
+	 * @param insecure
+	 *            whether the server certificate is trusted without
+	 *            verification
+	 * @param options
+	 *            channel options of the connection
+	 * @param receiver
+	 *            called on the client event loop with the response. nullable.
+	 * @return future of the response. Completed on the client event loop, so
+	 *         do not wait for it there.
+	 */
+	Future<HttpResponse> request(final HttpRequest request, boolean insecure, Map<ChannelOption<?>, Object> options,
+			final MessageReceiver receiver) {
+		URI uri = request.normalizedUri();
+
+		final FixedChannelPool pool = pools
+				.get(new Key(uri.getScheme(), uri.getHost(), uri.getPort(), insecure, options));
+		final Promise<HttpResponse> ret = group.next().newPromise();
+
+		pool.acquire().addListener(new FutureListener<Channel>() {
+			@Override
+			public void operationComplete(Future<Channel> future) throws Exception {
+				if (future.isSuccess() == false) {
+					request.release();
+					ret.setFailure(future.cause());
+					return;
+				}
+
+				Channel channel = future.getNow();
+
+				channel.pipeline().addBefore(CONNECTION_HANDLER, "handler",
+						new HttpClientHandler(receiver, request, pool, ret));
+				channel.writeAndFlush(request).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+			}
+		});
+
+		return ret;
+	}
+
+	/**
+	 * @return the number of hosts which have connection pools
+	 */
+	public int poolCount() {
+		return pools.size();
+	}
+
+	/**
+	 * Closes all the pooled connections and the event loop group.
+	 */
+	public void shutdown() {
+		pools.close();
+		group.shutdownGracefully().awaitUninterruptibly();
+	}
+
+	private SslContext sslContext(boolean insecure) throws SSLException {
+		SslContext ret = insecure ? insecureSslContext : sslContext;
+		if (ret != null) { return ret; }
+
+		synchronized (this) {
+			if (insecure) {
+				if (insecureSslContext == null) {
+					insecureSslContext = SslContextBuilder.forClient()
+							.trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+				}
+				return insecureSslContext;
+			}
+			else {
+				if (sslContext == null) {
+					sslContext = SslContextBuilder.forClient().build();
+				}
+				return sslContext;
+			}
+		}
+	}
+
+	/**
+	 * Last handler of pooled connections. Closes idle connections and the
+	 * connections failed while no request is on them.
+	 */
+	private static class ConnectionHandler extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+			if (evt instanceof IdleStateEvent) {
+				logger.debug("Idle client connection is closed : {}", ctx.channel());
+				ctx.close();
+				return;
+			}
+
+			ctx.fireUserEventTriggered(evt);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			logger.debug("Pooled client connection failed : {}", cause.getMessage());
+			ctx.close();
+		}
+	}
+
+	private class PoolHandler implements ChannelPoolHandler {
+
+		private final Key key;
+
+		private PoolHandler(Key key) {
+			this.key = key;
+		}
+
+		@Override
+		public void channelCreated(Channel ch) throws Exception {
+			if (Settings.SELF.snapshot().writelogOfNettyLogger()) {
+				ch.pipeline().addLast("log", new LoggingHandler("menton/client", Settings.SELF.logLevel()));
+			}
+
+			if ("https".equalsIgnoreCase(key.scheme)) {
+				ch.pipeline().addLast(sslContext(key.insecure).newHandler(ch.alloc(), key.host, key.port));
+			}
+
+			if (idleTimeout > 0) {
+				ch.pipeline().addLast("idleState", new IdleStateHandler(0, 0, idleTimeout, TimeUnit.SECONDS));
+			}
+
+			ch.pipeline().addLast("codec", new HttpClientCodec());
+			ch.pipeline().addLast("inflater", new HttpContentDecompressor());
+			ch.pipeline().addLast("chunkAggregator", new HttpObjectAggregator(1048576));
+			ch.pipeline().addLast(CONNECTION_HANDLER, new ConnectionHandler());
+		}
+
+		@Override
+		public void channelAcquired(Channel ch) throws Exception {
+			// nothing to do : the request handler is added by the borrower.
+		}
+
+		@Override
+		public void channelReleased(Channel ch) throws Exception {
+			// nothing to do : the request handler removes itself.
+		}
+	}
+
+	/**
+	 * Connection pool key.
+	 */
+	private static final class Key {
+
+		private final String scheme;
+		private final String host;
+		private final int port;
+		private final boolean insecure;
+		private final Map<ChannelOption<?>, Object> options;
+
+		private Key(String scheme, String host, int port, boolean insecure, Map<ChannelOption<?>, Object> options) {
+			this.scheme = scheme.toLowerCase();
+			this.host = host.toLowerCase();
+			this.port = port;
+			this.insecure = insecure && "https".equals(this.scheme);
+			this.options = ImmutableMap.copyOf(options);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) { return true; }
+			if (obj instanceof Key == false) { return false; }
+
+			Key other = (Key) obj;
+
+			return port == other.port && insecure == other.insecure && scheme.equals(other.scheme)
+					&& host.equals(other.host) && options.equals(other.options);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(scheme, host, port, insecure, options);
+		}
+	}
+}
@@ -6,6 +6,7 @@ package net.anyflow.menton.http;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -20,13 +21,13 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.DecoderResult;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
-import io.netty.handler.codec.http.QueryStringDecoder;
 import io.netty.handler.codec.http.cookie.ClientCookieEncoder;
 import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
@@ -39,27 +40,44 @@ public class HttpRequest extends DefaultFullHttpRequest {
 
 	private static final Logger logger = LoggerFactory.getLogger(HttpRequest.class);
 
-	private final Map<String, List<String>> parameters;
+	private final HttpHeaders headers;
+	private final HttpHeaders trailingHeaders;
 	private final Map<String, String> pathParameters;
-	private final URI uri;
-	private final Set<Cookie> cookies;
+
+	private ByteBuf content;
+	private Map<String, List<String>> parameters;
+	private URI uri;
+	private Set<Cookie> cookies;
 
 	protected HttpRequest(FullHttpRequest fullHttpRequest) throws URISyntaxException {
 		this(fullHttpRequest, new HashMap<String, String>());
+
+		// client requests are validated and decoded before being modified.
+		this.uri = createUriWithNormalizing(getUri());
+		parameters();
+		cookies();
 	}
 
+	/**
+	 * Wraps the request without copying. Headers are shared with the source
+	 * and the content is a retained view of the source content, so the request
+	 * should be released after use. URI, parameters and cookies are decoded on
+	 * first access.
+	 * 
+	 * @param fullHttpRequest
+	 * @param pathParameters
+	 * @throws URISyntaxException
+	 */
 	protected HttpRequest(FullHttpRequest fullHttpRequest, Map<String, String> pathParameters)
 			throws URISyntaxException {
 		super(fullHttpRequest.getProtocolVersion(), fullHttpRequest.getMethod(), fullHttpRequest.getUri(),
-				fullHttpRequest.content().copy());
+				Unpooled.EMPTY_BUFFER, false);
 
-		this.headers().set(fullHttpRequest.headers());
-		this.trailingHeaders().set(fullHttpRequest.trailingHeaders());
+		this.headers = fullHttpRequest.headers();
+		this.trailingHeaders = fullHttpRequest.trailingHeaders();
+		this.content = fullHttpRequest.content().duplicate().retain();
 		this.setDecoderResult(fullHttpRequest.getDecoderResult());
-		this.uri = createUriWithNormalizing(fullHttpRequest.getUri());
 
-		this.parameters = parameters();
-		this.cookies = cookies();
 		this.pathParameters = pathParameters;
 	}
 
@@ -92,11 +110,15 @@ public class HttpRequest extends DefaultFullHttpRequest {
 		if (cookies != null) { return cookies; }
 
 		String cookie = headers().get(HttpHeaders.Names.COOKIE);
-		if (cookie == null || "".equals(cookie)) { return new HashSet<Cookie>(); }
+		if (cookie == null || "".equals(cookie)) {
+			cookies = new HashSet<Cookie>();
+			return cookies;
+		}
 
 		Set<Cookie> ret = ServerCookieDecoder.STRICT.decode(cookie);
 
-		return ret == null || ret.isEmpty() ? new HashSet<Cookie>() : ret;
+		cookies = ret == null || ret.isEmpty() ? new HashSet<Cookie>() : ret;
+		return cookies;
 	}
 
 	public Map<String, String> pathParameters() {
@@ -107,6 +129,16 @@ public class HttpRequest extends DefaultFullHttpRequest {
 		return pathParameters.get(name);
 	}
 
+	/**
+	 * Query string parameters of GET/DELETE requests, or form parameters of
+	 * POST/PUT requests whose content type is
+	 * <code>application/x-www-form-urlencoded</code>. Decoded on first access
+	 * and cached.
+	 * 
+	 * @return parameter names and values. The map is modifiable.
+	 * @throws IllegalArgumentException
+	 *             if an escape sequence is malformed
+	 */
 	public Map<String, List<String>> parameters() {
 
 		if (parameters != null) { return parameters; }
@@ -114,20 +146,22 @@ public class HttpRequest extends DefaultFullHttpRequest {
 		Map<String, List<String>> ret = Maps.newHashMap();
 
 		if (HttpMethod.GET.equals(getMethod()) || HttpMethod.DELETE.equals(getMethod())) {
-			ret.putAll((new QueryStringDecoder(getUri())).parameters());
-			return ret;
+			ParameterDecoder.decodeQueryString(getUri(), ret);
 		}
-		else if (headers().contains(HttpHeaders.Names.CONTENT_TYPE)
-				&& headers().get(HttpHeaders.Names.CONTENT_TYPE)
-						.startsWith(HttpHeaders.Values.APPLICATION_X_WWW_FORM_URLENCODED)
-				&& (HttpMethod.POST.equals(getMethod()) || HttpMethod.PUT.equals(getMethod()))) {
-
-			ret.putAll((new QueryStringDecoder("/dummy?" + content().toString(CharsetUtil.UTF_8))).parameters());
+		else if ((HttpMethod.POST.equals(getMethod()) || HttpMethod.PUT.equals(getMethod())) && isForm()) {
+			ParameterDecoder.decodeForm(content(), ret);
 		}
 
+		parameters = ret;
 		return ret;
 	}
 
+	private boolean isForm() {
+		String contentType = headers().get(HttpHeaders.Names.CONTENT_TYPE);
+
+		return contentType != null && contentType.startsWith(HttpHeaders.Values.APPLICATION_X_WWW_FORM_URLENCODED);
+	}
+
 	/**
 	 * Get single parameter. In case of multiple values, the method returns the
 	 * first.
@@ -138,10 +172,57 @@ public class HttpRequest extends DefaultFullHttpRequest {
 	 *         returns null.
 	 */
 	public String parameter(String name) {
+		List<String> values = parameters().get(name);
+
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
 
-		if (parameters().containsKey(name) == false || parameters.get(name).size() <= 0) { return null; }
+	/**
+	 * @param name
+	 *            parameter name.
+	 * @return all the values of the parameter name. Empty if it does not
+	 *         exist.
+	 */
+	public List<String> parameterValues(String name) {
+		List<String> values = parameters().get(name);
 
-		return parameters().get(name).get(0);
+		return values == null ? Collections.<String> emptyList() : values;
+	}
+
+	/**
+	 * @param name
+	 *            parameter name.
+	 * @return the first value of the parameter name as an int. defaultValue if
+	 *         it does not exist or is not an integer.
+	 */
+	public int intParameter(String name, int defaultValue) {
+		String value = parameter(name);
+		if (value == null) { return defaultValue; }
+
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @param name
+	 *            parameter name.
+	 * @return the first value of the parameter name as a long. defaultValue if
+	 *         it does not exist or is not an integer.
+	 */
+	public long longParameter(String name, long defaultValue) {
+		String value = parameter(name);
+		if (value == null) { return defaultValue; }
+
+		try {
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException e) {
+			return defaultValue;
+		}
 	}
 
 	public HttpRequest addParameter(String name, String value) {
@@ -220,20 +301,98 @@ public class HttpRequest extends DefaultFullHttpRequest {
 			content = "";
 		}
 
-		byte[] contentByte = content.getBytes(CharsetUtil.UTF_8);
-		headers().set(HttpHeaders.Names.CONTENT_LENGTH, contentByte.length);
-		content().writeBytes(contentByte);
-		logger.debug(content().toString(CharsetUtil.UTF_8));
+		int length = ByteBufUtil.writeUtf8(content(), content);
+		headers().set(HttpHeaders.Names.CONTENT_LENGTH, length);
+
+		if (logger.isDebugEnabled()) {
+			logger.debug(content().toString(CharsetUtil.UTF_8));
+		}
 	}
 
-	public URI uri() {
+	/**
+	 * @return normalized URI(scheme and port are filled).
+	 * @throws IllegalArgumentException
+	 *             if the request URI has neither http nor https scheme.
+	 */
+	public URI normalizedUri() {
+		if (uri != null) { return uri; }
+
+		try {
+			uri = createUriWithNormalizing(getUri());
+		}
+		catch (URISyntaxException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+
 		return uri;
 	}
 
+	@Override
+	public HttpHeaders headers() {
+		return headers;
+	}
+
+	@Override
+	public HttpHeaders trailingHeaders() {
+		return trailingHeaders;
+	}
+
+	@Override
+	public ByteBuf content() {
+		return content;
+	}
+
+	@Override
+	public int refCnt() {
+		return content.refCnt();
+	}
+
+	@Override
+	public FullHttpRequest retain() {
+		content.retain();
+		return this;
+	}
+
+	@Override
+	public FullHttpRequest retain(int increment) {
+		content.retain(increment);
+		return this;
+	}
+
+	@Override
+	public boolean release() {
+		return content.release();
+	}
+
+	@Override
+	public boolean release(int decrement) {
+		return content.release(decrement);
+	}
+
+	@Override
+	public FullHttpRequest copy() {
+		return replicate(content.copy());
+	}
+
+	@Override
+	public FullHttpRequest duplicate() {
+		return replicate(content.duplicate());
+	}
+
+	private FullHttpRequest replicate(ByteBuf content) {
+		DefaultFullHttpRequest ret = new DefaultFullHttpRequest(getProtocolVersion(), getMethod(), getUri(), content);
+
+		ret.headers().set(headers());
+		ret.trailingHeaders().set(trailingHeaders());
+		ret.setDecoderResult(getDecoderResult());
+
+		return ret;
+	}
+
 	protected void normalize() {
 		normalizeParameters();
 
-		String encoded = ClientCookieEncoder.STRICT.encode(cookies);
+		String encoded = ClientCookieEncoder.STRICT.encode(cookies());
 		if (encoded == null) { return; }
 
 		headers().set(HttpHeaders.Names.COOKIE, encoded);
@@ -262,8 +421,8 @@ public class HttpRequest extends DefaultFullHttpRequest {
 	}
 
 	private void normalizeParameters() {
-		String address = (new StringBuilder()).append(uri().getScheme()).append("://").append(uri().getAuthority())
-				.append(uri().getPath()).toString();
+		String address = (new StringBuilder()).append(normalizedUri().getScheme()).append("://")
+				.append(normalizedUri().getAuthority()).append(normalizedUri().getPath()).toString();
 
 		if (HttpMethod.GET.equals(getMethod()) || HttpMethod.DELETE.equals(getMethod())) {
 			String parameters = convertParametersToString();
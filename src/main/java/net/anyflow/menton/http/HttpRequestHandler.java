@@ -1,5 +1,6 @@
 package net.anyflow.menton.http;
 
+import java.io.IOException;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -11,8 +12,12 @@ import java.util.Set;
 import org.reflections.Reflections;
 
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import io.netty.buffer.ByteBuf;
 import net.anyflow.menton.Settings;
+import net.anyflow.menton.SettingsListener;
+import net.anyflow.menton.SettingsSnapshot;
 
 /**
  * Base class for request handler. The class contains common stuffs for
@@ -22,9 +27,31 @@ import net.anyflow.menton.Settings;
  */
 public abstract class HttpRequestHandler {
 
-	private static final Map<String, Class<? extends HttpRequestHandler>> handlerClassMap = Maps.newHashMap();
-	private static Set<Class<? extends HttpRequestHandler>> requestHandlerClasses;
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HttpRequestHandler.class);
+
 	private static String requestHandlerPakcageRoot;
+	private static volatile RouteTable routeTable;
+
+	static {
+		// relative paths are prefixed by the context root when the route table
+		// is built.
+		Settings.SELF.register(new SettingsListener() {
+			@Override
+			public void settingsChanged(SettingsSnapshot previous, SettingsSnapshot current) {
+				if (previous.httpContextRoot().equals(current.httpContextRoot())) { return; }
+
+				synchronized (HttpRequestHandler.class) {
+					if (routeTable == null) { return; }
+
+					// swapped after built, so requests meanwhile are routed by the
+					// previous one.
+					routeTable = loadRouteTable();
+				}
+
+				logger.info("Route table rebuilt for the context root {}.", current.httpContextRoot());
+			}
+		});
+	}
 
 	private HttpRequest request;
 	private HttpResponse response;
@@ -49,13 +76,135 @@ public abstract class HttpRequestHandler {
 		String[] httpMethods();
 
 		String webResourcePath() default "none";
+
+		/**
+		 * @return instantiation scope of the handler
+		 */
+		Scope scope() default Scope.REQUEST;
+
+		/**
+		 * @return execution model of the handler
+		 */
+		Execution execution() default Execution.DEFAULT;
+
+		/**
+		 * @return maximum number of requests of the handler which are queued
+		 *         or being processed on the business executor. Exceeding
+		 *         requests are rejected with 503. 0 or negative means no limit
+		 *         per handler(the executor queue limit is still applied).
+		 */
+		int maxPendingRequests() default 0;
+
+		/**
+		 * @return false if responses of the handler should not be compressed
+		 *         regardless of {@link CompressionPolicy}.
+		 */
+		boolean compress() default true;
+
+		/**
+		 * @return true if the handler receives the request body chunk by chunk
+		 *         via {@link HttpRequestHandler#contentReceived(HttpRequest, ByteBuf)}
+		 *         instead of aggregated request content. The body size is not
+		 *         limited and reading from the connection is suspended while
+		 *         chunks are pending on the business executor.
+		 */
+		boolean streaming() default false;
+
+		/**
+		 * @return timeout of {@link AsyncHttpRequestHandler} in milliseconds. On
+		 *         timeout, the future is cancelled and 504 is responded. 0 means
+		 *         menton.httpServer.asyncTimeout setting and negative means no
+		 *         timeout.
+		 */
+		int timeout() default 0;
+	}
+
+	/**
+	 * Thread on which the handler is executed.
+	 */
+	public enum Execution {
+		/**
+		 * Follows menton.httpServer.execution setting(EVENT_LOOP if empty).
+		 */
+		DEFAULT,
+
+		/**
+		 * Inline on the channel's event loop. Suitable for trivial non-blocking
+		 * handlers only : a blocking handler stalls every connection on the
+		 * event loop.
+		 */
+		EVENT_LOOP,
+
+		/**
+		 * On the bounded business executor(menton.system.businessThreadCount
+		 * threads, menton.httpServer.maxPendingRequests queue). Suitable for
+		 * blocking handlers like database calls.
+		 */
+		WORKER
 	}
 
 	/**
+	 * Instantiation scope of request handler.
+	 */
+	public enum Scope {
+		/**
+		 * A new handler instance is created for each request. The request and
+		 * the response are available via {@link HttpRequestHandler#httpRequest()}
+		 * and {@link HttpRequestHandler#httpResponse()}.
+		 */
+		REQUEST,
+
+		/**
+		 * The handler is instantiated once on route table compilation and the
+		 * instance serves all the requests concurrently. The handler should
+		 * extend {@link StatelessHttpRequestHandler} or
+		 * {@link AsyncHttpRequestHandler}.
+		 */
+		SINGLETON
+	}
+
+	/**
+	 * Business logic of REQUEST scope handlers. The request and the response are
+	 * available via {@link #httpRequest()} and {@link #httpResponse()}.
+	 * 
 	 * @return processed response body string
 	 */
 	public abstract String service();
 
+	/**
+	 * Entrypoint of request handling. By default, the method binds the request
+	 * and the response to the handler instance and calls {@link #service()}.
+	 * 
+	 * @param request
+	 *            HTTP request
+	 * @param response
+	 *            HTTP response
+	 * @return processed response body string
+	 * @throws URISyntaxException
+	 */
+	public String service(HttpRequest request, HttpResponse response) throws URISyntaxException {
+		initialize(request, response);
+
+		return service();
+	}
+
+	/**
+	 * Called with each request body chunk of streaming handlers(
+	 * {@link Handles#streaming()}) in order, before
+	 * {@link #service(HttpRequest, HttpResponse)} is called. The content of
+	 * the request is empty for those handlers.
+	 * 
+	 * @param request
+	 *            HTTP request
+	 * @param content
+	 *            body chunk. It is released after the method returns, so
+	 *            retain it to keep.
+	 * @throws Exception
+	 */
+	public void contentReceived(HttpRequest request, ByteBuf content) throws Exception {
+		// no-op : the body is discarded.
+	}
+
 	protected void initialize(HttpRequest request, HttpResponse response) throws URISyntaxException {
 		this.request = request;
 		this.response = response;
@@ -69,114 +218,130 @@ public abstract class HttpRequestHandler {
 		return response;
 	}
 
+	/**
+	 * Sets the root package of request handlers and compiles the route table
+	 * of them.
+	 * 
+	 * @param requestHandlerPakcageRoot
+	 *            root package prefix of request handlers.
+	 */
 	public static void setRequestHandlerPakcageRoot(String requestHandlerPakcageRoot) {
 		HttpRequestHandler.requestHandlerPakcageRoot = requestHandlerPakcageRoot;
-	}
 
-	/**
-	 * @param requestedPath
-	 * @param httpMethod
-	 * @param requestHandlerPackageRoot
-	 * @return
-	 */
-	protected static MatchedCriterion findRequestHandler(String requestedPath, String httpMethod) {
+		routeTable = null;
+		routeTable();
+	}
 
-		for (String criterion : handlerClassMap.keySet()) {
-			MatchedCriterion mc = match(requestedPath, httpMethod, criterion);
+	static RouteTable routeTable() {
+		RouteTable ret = routeTable;
+		if (ret != null) { return ret; }
 
-			if (mc.result == true) {
-				mc.requestHandlerClass = handlerClassMap.get(criterion);
-				return mc;
+		synchronized (HttpRequestHandler.class) {
+			if (routeTable == null) {
+				routeTable = loadRouteTable();
 			}
+
+			return routeTable;
 		}
+	}
 
-		if (requestHandlerClasses == null) {
-			requestHandlerClasses = (new Reflections(requestHandlerPakcageRoot))
-					.getSubTypesOf(HttpRequestHandler.class);
+	private static RouteTable loadRouteTable() {
+		RouteTable ret = null;
+
+		try {
+			ret = RouteTable.load(Thread.currentThread().getContextClassLoader(), requestHandlerPakcageRoot);
+		}
+		catch (IOException e) {
+			logger.error("Failed to load the route manifest. Classpath scanning will be used instead.", e);
 		}
 
-		for (Class<? extends HttpRequestHandler> item : requestHandlerClasses) {
+		if (ret != null && ret.size() > 0) {
+			logger.info("{} request handler route(s) loaded from {}.", ret.size(), RouteTable.MANIFEST_PATH);
+		}
+		else {
+			// Fallback : no manifest generated by HandlesProcessor. The base
+			// classes are out of the scanned package, so the handlers are not
+			// resolved transitively.
+			Reflections reflections = new Reflections(requestHandlerPakcageRoot);
+			Set<Class<? extends HttpRequestHandler>> handlerClasses = Sets.newLinkedHashSet();
 
-			HttpRequestHandler.Handles annotation = item.getAnnotation(HttpRequestHandler.Handles.class);
+			handlerClasses.addAll(reflections.getSubTypesOf(HttpRequestHandler.class));
+			handlerClasses.addAll(reflections.getSubTypesOf(StatelessHttpRequestHandler.class));
+			handlerClasses.addAll(reflections.getSubTypesOf(AsyncHttpRequestHandler.class));
 
-			if (annotation == null) {
-				continue;
-			}
+			ret = RouteTable.build(handlerClasses);
 
-			for (String method : annotation.httpMethods()) {
-				if (method.equalsIgnoreCase(httpMethod) == false) {
-					continue;
-				}
+			logger.info("{} request handler route(s) compiled by classpath scanning.", ret.size());
+		}
 
-				for (String rawPath : annotation.paths()) {
+		return ret;
+	}
 
-					String path = (rawPath.charAt(0) == '/') ? rawPath : Settings.SELF.httpContextRoot() + rawPath;
-					String criterion = path + "/" + method;
+	/**
+	 * @param requestedPath
+	 * @param httpMethod
+	 * @return matched criterion
+	 */
+	protected static MatchedCriterion findRequestHandler(String requestedPath, String httpMethod) {
+		return routeTable().find(requestedPath, httpMethod);
+	}
 
-					MatchedCriterion mc = match(requestedPath, method, criterion);
-					if (mc.result == false) {
-						continue;
-					}
+	protected static class MatchedCriterion {
 
-					handlerClassMap.put(criterion, item);
-					mc.requestHandlerClass = item;
+		private final RouteTable.Route route;
+		private final String criterionHttpMethod;
+		private final Map<String, String> pathParameters;
 
-					return mc;
-				}
-			}
+		MatchedCriterion() {
+			this(null, null, Maps.<String, String> newHashMap());
 		}
 
-		return new MatchedCriterion();
-	}
+		MatchedCriterion(RouteTable.Route route, String criterionHttpMethod, Map<String, String> pathParameters) {
+			this.route = route;
+			this.criterionHttpMethod = criterionHttpMethod;
+			this.pathParameters = pathParameters;
+		}
 
-	protected static class MatchedCriterion {
+		public boolean result() {
+			return route != null;
+		}
 
-		private boolean result;
-		private Class<? extends HttpRequestHandler> requestHandlerClass;
-		private String criterionPath;
-		private String criterionHttpMethod;
-		private final Map<String, String> pathParameters = Maps.newHashMap();
+		RouteTable.Route route() {
+			return route;
+		}
 
 		public Class<? extends HttpRequestHandler> requestHandlerClass() {
-			return requestHandlerClass;
+			return route == null ? null : route.handlerClass();
+		}
+
+		/**
+		 * @return handler instance which serves the request. SINGLETON scope
+		 *         handlers return the same instance, otherwise a new instance
+		 *         is created.
+		 * @throws InstantiationException
+		 * @throws IllegalAccessException
+		 */
+		public HttpRequestHandler requestHandler() throws InstantiationException, IllegalAccessException {
+			return route.requestHandler();
 		}
 
 		public String criterionPath() {
-			return criterionPath;
+			return route == null ? null : route.criterionPath();
 		}
 
 		public String criterionHttpMethod() {
 			return criterionHttpMethod;
 		}
 
-		public Map<String, String> pathParameters() {
-			return pathParameters;
+		/**
+		 * @return {@link Handles#webResourcePath()} of the matched handler
+		 */
+		public String webResourcePath() {
+			return route == null ? null : route.webResourcePath();
 		}
-	}
-
-	private static MatchedCriterion match(String requestedPath, String httpMethod, String criterion) {
-
-		MatchedCriterion ret = new MatchedCriterion();
-
-		String testTarget = requestedPath + "/" + httpMethod;
-
-		String[] testTokens = testTarget.split("/");
-		String[] criterionTokens = criterion.split("/");
-
-		if (criterionTokens.length != testTokens.length) { return ret; }
 
-		// should start with #1 due to item[0] is whitespace.
-		for (int i = 1; i < criterionTokens.length; ++i) {
-			if (criterionTokens[i].startsWith("{") && criterionTokens[i].endsWith("}")) {
-				ret.pathParameters.put(criterionTokens[i].substring(1, criterionTokens[i].length() - 1), testTokens[i]);
-			}
-			else if (criterionTokens[i].equalsIgnoreCase(testTokens[i]) == false) { return ret; }
+		public Map<String, String> pathParameters() {
+			return pathParameters;
 		}
-
-		ret.result = true;
-		ret.criterionHttpMethod = httpMethod;
-		ret.criterionPath = criterion.replace("/" + httpMethod, "");
-
-		return ret;
 	}
-}
\ No newline at end of file
+}
@@ -2,38 +2,89 @@ package net.anyflow.menton.http;
 
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
-
-import com.google.common.io.Files;
-
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders.Names;
 import io.netty.handler.codec.http.HttpHeaders.Values;
+import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedFile;
+import io.netty.handler.stream.ChunkedStream;
+import io.netty.util.concurrent.ScheduledFuture;
 import net.anyflow.menton.Environment;
 import net.anyflow.menton.Settings;
 
 /**
  * @author anyflow
  */
-public class HttpRequestRouter extends SimpleChannelInboundHandler<FullHttpRequest> {
+public class HttpRequestRouter extends SimpleChannelInboundHandler<HttpObject> {
 
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HttpRequestRouter.class);
 
+	private static final int CHUNK_SIZE = 8192;
+
+	private static final HeaderBlock SERVER_HEADERS = new HeaderBlock(
+			ImmutableMap.of(Names.SERVER, Environment.PROJECT_ARTIFACT_ID + " " + Environment.PROJECT_VERSION));
+
+	private static final CharSequence CONNECTION = HttpHeaders.newEntity(Names.CONNECTION);
+	private static final CharSequence KEEP_ALIVE = HttpHeaders.newEntity(Values.KEEP_ALIVE);
+	private static final CharSequence CLOSE = HttpHeaders.newEntity(Values.CLOSE);
+
+	private final ExecutorService businessExecutor;
+
+	/**
+	 * Request of streaming handler whose body is being received.
+	 */
+	private StreamingRequest streaming;
+
+	/**
+	 * Response stream of the request being served, which is notified on
+	 * writability change.
+	 */
+	private volatile ResponseStream responseStream;
+
 	protected HttpRequestRouter() {
+		this(null);
+	}
+
+	/**
+	 * @param businessExecutor
+	 *            executor for {@link HttpRequestHandler.Execution#WORKER}
+	 *            handlers. If null, all the handlers are executed on the event
+	 *            loop.
+	 */
+	protected HttpRequestRouter(ExecutorService businessExecutor) {
+		this.businessExecutor = businessExecutor;
 	}
 
 	private boolean isWebResourcePath(String path) {
@@ -54,7 +105,19 @@ public class HttpRequestRouter extends SimpleChannelInboundHandler<FullHttpReque
 	 * channel.ChannelHandlerContext, java.lang.Object)
 	 */
 	@Override
-	protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
+	protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) throws Exception {
+		if (msg instanceof FullHttpRequest) {
+			route(ctx, (FullHttpRequest) msg);
+		}
+		else if (msg instanceof io.netty.handler.codec.http.HttpRequest) {
+			startStreaming(ctx, (io.netty.handler.codec.http.HttpRequest) msg);
+		}
+		else if (msg instanceof HttpContent) {
+			stream(ctx, (HttpContent) msg);
+		}
+	}
+
+	private void route(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
 		if (Values.WEBSOCKET.equalsIgnoreCase(request.headers().get(Names.UPGRADE))
 				&& Values.UPGRADE.equalsIgnoreCase(request.headers().get(Names.CONNECTION))) {
 
@@ -70,15 +133,20 @@ public class HttpRequestRouter extends SimpleChannelInboundHandler<FullHttpReque
 			return;
 		}
 
-		if (HttpHeaders.is100ContinueExpected(request)) {
-			ctx.write(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
-			return;
-		}
-
-		HttpResponse response = HttpResponse.createServerDefault(request.headers().get(HttpHeaders.Names.COOKIE));
+		// 100 Continue of aggregated requests is sent by the aggregator.
 
 		String requestPath = new URI(request.getUri()).getPath();
 
+		HttpResponse response = HttpResponse.createServerDefault(request.headers().get(HttpHeaders.Names.COOKIE),
+				ctx.alloc());
+
+		CorsPolicy cors = CorsPolicy.instance();
+		if (cors.isPreflight(request)) {
+			cors.preflight(request, response);
+			write(ctx, request, response);
+			return;
+		}
+
 		if (isWebResourcePath(requestPath)) {
 			handleWebResourceRequest(ctx, request, response, requestPath);
 		}
@@ -89,87 +157,180 @@ public class HttpRequestRouter extends SimpleChannelInboundHandler<FullHttpReque
 			catch (URISyntaxException e) {
 				response.setStatus(HttpResponseStatus.NOT_FOUND);
 				logger.info("unexcepted URI : {}", request.getUri());
-			}
-			catch (Exception e) {
-				response.setStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
-				logger.error("Unknown exception was thrown in business logic handler.\r\n" + e.getMessage(), e);
+
+				write(ctx, request, response);
 			}
 		}
 	}
 
 	/**
+	 * Serves the web resource. Small resources are served from
+	 * {@link WebResourceCache}. Others are transferred without copying into
+	 * user space(sendfile) on plain HTTP and streamed in chunks on HTTPS.
+	 * Resources in jar are streamed.
+	 * 
 	 * @param response
+	 *            used for cached, not found, not modified or resources of
+	 *            unknown length. Released otherwise.
 	 * @param webResourceRequestPath
 	 * @throws IOException
 	 */
 	private void handleWebResourceRequest(ChannelHandlerContext ctx, FullHttpRequest rawRequest, HttpResponse response,
 			String webResourceRequestPath) throws IOException {
-		InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(webResourceRequestPath);
+		WebResource original = WebResourceCache.instance().get(webResourceRequestPath);
 
-		if (is == null) {
-			String rootPath = (new File(Settings.SELF.WebResourcePhysicalRootPath(), webResourceRequestPath)).getPath();
-			try {
-				is = new FileInputStream(rootPath);
-			}
-			catch (FileNotFoundException e) {
-				is = null;
-			}
+		if (original == null) {
+			response.setStatus(HttpResponseStatus.NOT_FOUND);
+			write(ctx, rawRequest, response);
+			return;
 		}
 
-		if (is == null) {
+		// precompressed variant is passed through the compressor.
+		WebResource resource = original.select(rawRequest.headers().get(Names.ACCEPT_ENCODING));
+		boolean varied = original.hasVariants();
+
+		if (resource.isNotModified(rawRequest)) {
+			response.setStatus(HttpResponseStatus.NOT_MODIFIED);
+			response.headers().remove(Names.CONTENT_TYPE);
+			resource.setHeaders(response, varied);
+			write(ctx, rawRequest, response);
+			return;
+		}
+
+		ByteBuf content = resource.retainedContent();
+		if (content != null) {
+			response.setContent(content);
+			resource.setHeaders(response, varied);
+			write(ctx, rawRequest, response);
+			return;
+		}
+
+		if (resource.file() != null) {
+			writeFile(ctx, rawRequest, response, resource, varied);
+		}
+		else {
+			writeStream(ctx, rawRequest, response, resource, varied);
+		}
+	}
+
+	private void writeFile(ChannelHandlerContext ctx, FullHttpRequest rawRequest, HttpResponse response,
+			WebResource resource, boolean varied) throws IOException {
+		RandomAccessFile raf;
+		try {
+			raf = new RandomAccessFile(resource.file(), "r");
+		}
+		catch (FileNotFoundException e) {
 			response.setStatus(HttpResponseStatus.NOT_FOUND);
+			write(ctx, rawRequest, response);
+			return;
+		}
+
+		long length = raf.length();
+
+		response.release();
+		writeHeader(ctx, rawRequest, resource, varied, length);
+
+		if (ctx.pipeline().get(SslHandler.class) == null) {
+			ctx.write(new DefaultFileRegion(raf.getChannel(), 0, length));
 		}
 		else {
-			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			ctx.write(new ChunkedFile(raf, 0, length, CHUNK_SIZE));
+		}
 
-			int nRead;
-			byte[] data = new byte[16384];
+		ctx.write(LastHttpContent.EMPTY_LAST_CONTENT);
+	}
 
-			while ((nRead = is.read(data, 0, data.length)) != -1) {
-				buffer.write(data, 0, nRead);
+	private void writeStream(ChannelHandlerContext ctx, FullHttpRequest rawRequest, HttpResponse response,
+			WebResource resource, boolean varied) throws IOException {
+		InputStream is = resource.openStream();
+
+		if (resource.length() < 0) {
+			try {
+				while (response.content().writeBytes(is, CHUNK_SIZE) != -1) {
+					continue;
+				}
+			}
+			catch (IOException e) {
+				response.release();
+				throw e;
 			}
+			finally {
+				is.close();
+			}
+
+			resource.setHeaders(response, varied);
+			write(ctx, rawRequest, response);
+			return;
+		}
 
-			buffer.flush();
-			response.content().writeBytes(buffer.toByteArray());
+		response.release();
+		writeHeader(ctx, rawRequest, resource, varied, resource.length());
 
-			String ext = Files.getFileExtension(webResourceRequestPath);
-			response.headers().set(Names.CONTENT_TYPE, Settings.SELF.webResourceExtensionToMimes().get(ext));
+		ctx.write(new ChunkedStream(is, CHUNK_SIZE)); // closed on the end of the stream.
+		ctx.write(LastHttpContent.EMPTY_LAST_CONTENT);
+	}
+
+	private void writeHeader(ChannelHandlerContext ctx, FullHttpRequest rawRequest, WebResource resource,
+			boolean varied, long contentLength) {
+		DefaultHttpResponse header = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
 
-			is.close();
+		resource.setHeaders(header, varied);
+		setDefaultHeaders(rawRequest, header, contentLength);
+
+		if (Settings.SELF.snapshot().writeHttpResponse()) {
+			logger.info(header.toString());
 		}
 
-		setDefaultHeaders(rawRequest, response);
+		ctx.write(header);
+	}
 
-		if ("true".equalsIgnoreCase(Settings.SELF.getProperty("menton.logging.writeHttpResponse"))) {
+	/**
+	 * Writes the response. The method can be called out of the event loop.
+	 */
+	private void write(ChannelHandlerContext ctx, FullHttpRequest rawRequest, HttpResponse response) {
+		setDefaultHeaders(rawRequest, response, response.content().readableBytes());
+
+		if (Settings.SELF.snapshot().writeHttpResponse()) {
 			logger.info(response.toString());
 		}
 
-		ctx.write(response);
+		if (ctx.executor().inEventLoop()) {
+			ctx.write(response); // flushed on channelReadComplete, consolidated by FlushConsolidator
+		}
+		else {
+			ctx.writeAndFlush(response);
+		}
 	}
 
-	private void setDefaultHeaders(FullHttpRequest request, HttpResponse response) {
+	/**
+	 * Sets the headers common to the server responses.
+	 * 
+	 * @param contentLength
+	 *            negative means chunked.
+	 */
+	static void setDefaultHeaders(FullHttpRequest request, io.netty.handler.codec.http.HttpResponse response,
+			long contentLength) {
+
+		SERVER_HEADERS.apply(response.headers());
 
-		response.headers().add(Names.SERVER, Environment.PROJECT_ARTIFACT_ID + " " + Environment.PROJECT_VERSION);
+		// explicit for HTTP/1.0 clients. ResponseSequencer closes the
+		// connection after non keep-alive responses.
+		response.headers().set(CONNECTION, HttpHeaders.isKeepAlive(request) ? KEEP_ALIVE : CLOSE);
 
-		boolean keepAlive = request.headers().get(HttpHeaders.Names.CONNECTION) == HttpHeaders.Values.KEEP_ALIVE;
-		if (keepAlive) {
-			response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
-		}
+		CorsPolicy.instance().apply(request, response);
 
-		if (Settings.SELF.getProperty("menton.httpServer.allowCrossDomain", "false").equalsIgnoreCase("true")) {
-			response.headers().add(Names.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-			response.headers().add(Names.ACCESS_CONTROL_ALLOW_METHODS, "POST, GET, PUT, DELETE");
-			response.headers().add(Names.ACCESS_CONTROL_ALLOW_HEADERS, "X-PINGARUNER");
-			response.headers().add(Names.ACCESS_CONTROL_MAX_AGE, "1728000");
+		if (contentLength < 0) {
+			HttpHeaders.setTransferEncodingChunked(response);
+		}
+		else if (response.getStatus().code() != HttpResponseStatus.NOT_MODIFIED.code()) {
+			response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, contentLength);
 		}
-
-		response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, response.content().readableBytes());
 	}
 
-	private void processRequest(ChannelHandlerContext ctx, FullHttpRequest rawRequest, HttpResponse response)
-			throws InstantiationException, IllegalAccessException, IOException, URISyntaxException {
+	private void processRequest(final ChannelHandlerContext ctx, final FullHttpRequest rawRequest,
+			final HttpResponse response) throws IOException, URISyntaxException {
 
-		HttpRequestHandler.MatchedCriterion mc = HttpRequestHandler
+		final HttpRequestHandler.MatchedCriterion mc = HttpRequestHandler
 				.findRequestHandler((new URI(rawRequest.getUri())).getPath(), rawRequest.getMethod().toString());
 
 		if (mc.requestHandlerClass() == null) {
@@ -179,35 +340,515 @@ public class HttpRequestRouter extends SimpleChannelInboundHandler<FullHttpReque
 			response.headers().add(Names.CONTENT_TYPE, "text/html");
 
 			response.setContent(HtmlGenerator.error(Literals.FAILED_TO_FIND_REQUEST_HANDLER, response.getStatus()));
+
+			write(ctx, rawRequest, response);
+			return;
+		}
+
+		if ("none".equals(mc.webResourcePath()) == false) {
+			handleWebResourceRequest(ctx, rawRequest, response, mc.webResourcePath());
+			return;
+		}
+
+		// holds a reference of the request content until the handler returns.
+		final HttpRequest request = new HttpRequest(rawRequest, mc.pathParameters());
+
+		if (executesOnEventLoop(mc.route())) {
+			service(ctx, rawRequest, request, response, mc);
+			return;
+		}
+
+		final RouteTable.Route route = mc.route();
+
+		if (route.tryAcquire() == false) {
+			request.release();
+			reject(ctx, rawRequest, response);
+			return;
+		}
+
+		try {
+			businessExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						service(ctx, rawRequest, request, response, mc);
+					}
+					finally {
+						route.release();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			route.release();
+			request.release();
+
+			reject(ctx, rawRequest, response);
+		}
+	}
+
+	private void service(ChannelHandlerContext ctx, FullHttpRequest rawRequest, HttpRequest request,
+			HttpResponse response, HttpRequestHandler.MatchedCriterion mc) {
+		service(ctx, rawRequest, request, response, mc, null);
+	}
+
+	/**
+	 * @param handler
+	 *            handler instance. If null, it is obtained from the matched
+	 *            criterion.
+	 */
+	private void service(final ChannelHandlerContext ctx, final FullHttpRequest rawRequest, HttpRequest request,
+			HttpResponse response, final HttpRequestHandler.MatchedCriterion mc, HttpRequestHandler handler) {
+		ResponseStream stream = new ResponseStream(ctx, response) {
+			@Override
+			void prepare(io.netty.handler.codec.http.HttpResponse header) {
+				markCompression(mc.route(), header);
+				setDefaultHeaders(rawRequest, header, -1);
+
+				if (Settings.SELF.snapshot().writeHttpResponse()) {
+					logger.info(header.toString());
+				}
+			}
+		};
+
+		response.stream(stream);
+		responseStream = stream;
+
+		String content;
+		try {
+			if (handler == null) {
+				handler = mc.requestHandler();
+			}
+
+			if (Settings.SELF.snapshot().writeHttpRequest()) {
+				logger.info(request.toString());
+			}
+
+			if (mc.route().async()) {
+				new AsyncCompletion(ctx, rawRequest, request, response, mc)
+						.await(((AsyncHttpRequestHandler) handler).serviceAsync(request, response));
+				return;
+			}
+
+			content = handler.service(request, response);
+		}
+		catch (Exception e) {
+			complete(ctx, rawRequest, request, response, mc, null, e);
+			return;
+		}
+
+		complete(ctx, rawRequest, request, response, mc, content, null);
+	}
+
+	/**
+	 * Writes the response of the handler and releases the request.
+	 * 
+	 * @param content
+	 *            response body returned by the handler
+	 * @param cause
+	 *            exception thrown by the handler. null if succeeded.
+	 */
+	private void complete(ChannelHandlerContext ctx, FullHttpRequest rawRequest, HttpRequest request,
+			HttpResponse response, HttpRequestHandler.MatchedCriterion mc, String content, Throwable cause) {
+		request.release();
+
+		if (responseStream == response.stream()) {
+			responseStream = null;
+		}
+
+		if (cause != null) {
+			response.setStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+			logger.error("Unknown exception was thrown in business logic handler.\r\n" + cause.getMessage(), cause);
+
+			if (response.isStreamed()) {
+				// the status is already sent. Closing without the last chunk
+				// tells the client the body is truncated.
+				response.release();
+				ctx.close();
+				return;
+			}
+		}
+		else if (response.isStreamed()) {
+			response.release();
+			response.stream().close();
+			return;
 		}
 		else {
-			HttpRequest request = new HttpRequest(rawRequest, mc.pathParameters());
+			response.setContent(content);
+		}
+
+		markCompression(mc.route(), response);
+
+		write(ctx, rawRequest, response);
+	}
 
-			HttpRequestHandler handler = mc.requestHandlerClass().newInstance();
+	/**
+	 * Completion of an asynchronous handler. The result and the timeout are
+	 * handled on the event loop, so the one which comes first writes the
+	 * response.
+	 */
+	private class AsyncCompletion implements FutureCallback<String>, Runnable {
+
+		private final ChannelHandlerContext ctx;
+		private final FullHttpRequest rawRequest;
+		private final HttpRequest request;
+		private final HttpResponse response;
+		private final HttpRequestHandler.MatchedCriterion mc;
+
+		private ListenableFuture<String> future;
+		private ScheduledFuture<?> timeout;
+		private boolean timedOut;
+
+		private AsyncCompletion(ChannelHandlerContext ctx, FullHttpRequest rawRequest, HttpRequest request,
+				HttpResponse response, HttpRequestHandler.MatchedCriterion mc) {
+			this.ctx = ctx;
+			this.rawRequest = rawRequest;
+			this.request = request;
+			this.response = response;
+			this.mc = mc;
+		}
 
-			String webResourcePath = handler.getClass().getAnnotation(HttpRequestHandler.Handles.class)
-					.webResourcePath();
-			if ("none".equals(webResourcePath) == false) {
-				handleWebResourceRequest(ctx, rawRequest, response, webResourcePath);
+		/**
+		 * @param future
+		 *            future returned by the handler. null is regarded as a
+		 *            failure of the handler.
+		 */
+		private void await(ListenableFuture<String> future) {
+			if (future == null) {
+				onFailure(new NullPointerException(mc.requestHandlerClass().getName() + " returned null future."));
 				return;
 			}
 
-			handler.initialize(request, response);
+			this.future = future;
+			Futures.addCallback(future, this, ctx.executor());
 
-			if ("true".equalsIgnoreCase(Settings.SELF.getProperty("menton.logging.writeHttpRequest"))) {
-				logger.info(request.toString());
+			// scheduled after the callback is registered. If the callback
+			// comes first, the timeout finds the future done and does nothing.
+			int millis = mc.route().timeout();
+			if (millis > 0) {
+				timeout = ctx.executor().schedule(this, millis, TimeUnit.MILLISECONDS);
 			}
+		}
+
+		@Override
+		public void onSuccess(String result) {
+			if (released()) { return; }
 
-			response.setContent(handler.service());
+			complete(ctx, rawRequest, request, response, mc, result, null);
+			ctx.flush();
 		}
 
-		setDefaultHeaders(rawRequest, response);
+		@Override
+		public void onFailure(Throwable t) {
+			if (released()) { return; }
 
-		if ("true".equalsIgnoreCase(Settings.SELF.getProperty("menton.logging.writeHttpResponse"))) {
-			logger.info(response.toString());
+			complete(ctx, rawRequest, request, response, mc, null, t);
+			ctx.flush();
+		}
+
+		/**
+		 * @return true if the request and the response were released because
+		 *         the 504 response was already written.
+		 */
+		private boolean released() {
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+
+			if (timedOut == false) { return false; }
+
+			request.release();
+			response.release();
+			return true;
+		}
+
+		/**
+		 * Timeout. The handler may still be using the response, so a new
+		 * response is written.
+		 */
+		@Override
+		public void run() {
+			if (future.isDone()) { return; } // the callback is pending.
+
+			timedOut = true;
+			future.cancel(true);
+
+			logger.warn("Asynchronous handler timed out : {}", rawRequest.getUri());
+
+			if (response.isStreamed()) {
+				ctx.close();
+				return;
+			}
+
+			HttpResponse timeoutResponse = HttpResponse
+					.createServerDefault(rawRequest.headers().get(HttpHeaders.Names.COOKIE), ctx.alloc());
+
+			timeoutResponse.setStatus(HttpResponseStatus.GATEWAY_TIMEOUT);
+			timeoutResponse.headers().set(Names.CONTENT_TYPE, "text/html");
+			timeoutResponse
+					.setContent(HtmlGenerator.error(Literals.REQUEST_TIMED_OUT, timeoutResponse.getStatus()));
+
+			write(ctx, rawRequest, timeoutResponse);
+			ctx.flush();
+		}
+	}
+
+	private void markCompression(RouteTable.Route route, io.netty.handler.codec.http.HttpResponse response) {
+		if (route.compress() == false) {
+			// opt-out mark for ContentCompressor, which removes it.
+			response.headers().set(ContentCompressor.NO_COMPRESSION, Boolean.TRUE);
+		}
+	}
+
+	private void reject(ChannelHandlerContext ctx, FullHttpRequest rawRequest, HttpResponse response) {
+		response.setStatus(HttpResponseStatus.SERVICE_UNAVAILABLE);
+		logger.warn("Too many pending requests. The request is rejected : {}", rawRequest.getUri());
+
+		response.headers().set(Names.CONTENT_TYPE, "text/html");
+		response.setContent(HtmlGenerator.error(Literals.TOO_MANY_PENDING_REQUESTS, response.getStatus()));
+
+		write(ctx, rawRequest, response);
+	}
+
+	private boolean executesOnEventLoop(RouteTable.Route route) {
+		if (businessExecutor == null) { return true; }
+
+		HttpRequestHandler.Execution execution = route.execution();
+
+		if (execution == HttpRequestHandler.Execution.DEFAULT) {
+			execution = Settings.SELF.snapshot().execution();
+		}
+
+		return execution != HttpRequestHandler.Execution.WORKER;
+	}
+
+	private void startStreaming(ChannelHandlerContext ctx, io.netty.handler.codec.http.HttpRequest head)
+			throws URISyntaxException {
+		if (HttpHeaders.is100ContinueExpected(head)) {
+			ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+		}
+
+		FullHttpRequest rawRequest = new DefaultFullHttpRequest(head.getProtocolVersion(), head.getMethod(),
+				head.getUri(), Unpooled.EMPTY_BUFFER);
+		rawRequest.headers().set(head.headers());
+
+		HttpRequestHandler.MatchedCriterion mc = HttpRequestHandler
+				.findRequestHandler((new URI(head.getUri())).getPath(), head.getMethod().toString());
+
+		streaming = new StreamingRequest(ctx, rawRequest, mc);
+	}
+
+	private void stream(ChannelHandlerContext ctx, HttpContent content) {
+		if (streaming == null) { return; }
+
+		if (content.content().isReadable()) {
+			streaming.receive(content.content());
+		}
+
+		if (content instanceof LastHttpContent) {
+			streaming.complete();
+			streaming = null;
+		}
+	}
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		ResponseStream stream = responseStream;
+		if (stream != null) {
+			stream.writabilityChanged();
+		}
+
+		super.channelWritabilityChanged(ctx);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		ResponseStream stream = responseStream;
+		if (stream != null) {
+			stream.writabilityChanged();
+		}
+
+		if (streaming != null) {
+			streaming.abort();
+			streaming = null;
 		}
 
-		ctx.write(response);
+		super.channelInactive(ctx);
+	}
+
+	/**
+	 * Request of streaming handler. Body chunks and the final service call are
+	 * executed in order. On the business executor, they are executed one by
+	 * one and reading from the connection is suspended while any of them is
+	 * pending.
+	 */
+	private class StreamingRequest {
+
+		private final ChannelHandlerContext ctx;
+		private final FullHttpRequest rawRequest;
+		private final HttpRequestHandler.MatchedCriterion mc;
+		private final HttpRequest request;
+		private final HttpResponse response;
+		private final boolean onEventLoop;
+
+		private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+		private boolean running;
+
+		private HttpRequestHandler handler;
+		private boolean acquired;
+		private volatile boolean failed;
+
+		private StreamingRequest(ChannelHandlerContext ctx, FullHttpRequest rawRequest,
+				HttpRequestHandler.MatchedCriterion mc) throws URISyntaxException {
+			this.ctx = ctx;
+			this.rawRequest = rawRequest;
+			this.mc = mc;
+			this.request = new HttpRequest(rawRequest, mc.pathParameters());
+			this.response = HttpResponse.createServerDefault(rawRequest.headers().get(HttpHeaders.Names.COOKIE),
+					ctx.alloc());
+			this.onEventLoop = executesOnEventLoop(mc.route());
+
+			if (onEventLoop == false) {
+				acquired = mc.route().tryAcquire();
+
+				if (acquired == false) {
+					fail(HttpResponseStatus.SERVICE_UNAVAILABLE, Literals.TOO_MANY_PENDING_REQUESTS);
+					return;
+				}
+			}
+
+			try {
+				handler = mc.requestHandler();
+			}
+			catch (InstantiationException | IllegalAccessException e) {
+				logger.error(e.getMessage(), e);
+				fail(HttpResponseStatus.INTERNAL_SERVER_ERROR, null);
+			}
+		}
+
+		private void receive(ByteBuf content) {
+			final ByteBuf chunk = content.retain();
+
+			submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (failed == false) {
+							handler.contentReceived(request, chunk);
+						}
+					}
+					catch (Exception e) {
+						logger.error("Unknown exception was thrown in business logic handler.\r\n" + e.getMessage(), e);
+						fail(HttpResponseStatus.INTERNAL_SERVER_ERROR, null);
+					}
+					finally {
+						chunk.release();
+					}
+				}
+			});
+		}
+
+		private void complete() {
+			submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (failed) {
+							request.release();
+							write(ctx, rawRequest, response);
+						}
+						else {
+							service(ctx, rawRequest, request, response, mc, handler);
+						}
+					}
+					finally {
+						finish();
+					}
+				}
+			});
+		}
+
+		private void abort() {
+			submit(new Runnable() {
+				@Override
+				public void run() {
+					request.release();
+					response.release();
+					finish();
+				}
+			});
+		}
+
+		private void finish() {
+			if (acquired) {
+				mc.route().release();
+			}
+		}
+
+		private void fail(HttpResponseStatus status, String message) {
+			failed = true;
+
+			response.setStatus(status);
+			if (message != null) {
+				response.headers().set(Names.CONTENT_TYPE, "text/html");
+				response.setContent(HtmlGenerator.error(message, status));
+			}
+		}
+
+		private void submit(Runnable task) {
+			if (onEventLoop) {
+				task.run();
+				return;
+			}
+
+			tasks.add(task);
+			if (running) { return; }
+
+			ctx.channel().config().setAutoRead(false);
+			runNext();
+		}
+
+		/**
+		 * Executes the next task on the business executor. Called on the event
+		 * loop.
+		 */
+		private void runNext() {
+			final Runnable task = tasks.poll();
+
+			if (task == null) {
+				running = false;
+				ctx.channel().config().setAutoRead(true);
+				return;
+			}
+
+			running = true;
+			try {
+				businessExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							task.run();
+						}
+						finally {
+							ctx.executor().execute(new Runnable() {
+								@Override
+								public void run() {
+									runNext();
+								}
+							});
+						}
+					}
+				});
+			}
+			catch (RejectedExecutionException e) {
+				if (failed == false) {
+					fail(HttpResponseStatus.SERVICE_UNAVAILABLE, Literals.TOO_MANY_PENDING_REQUESTS);
+				}
+
+				task.run();
+				runNext();
+			}
+		}
 	}
 
 	@Override
@@ -8,9 +8,9 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.primitives.Ints;
-
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
@@ -24,6 +24,7 @@ import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import io.netty.util.CharsetUtil;
 import net.anyflow.menton.Settings;
+import net.anyflow.menton.SettingsSnapshot;
 
 /**
  * @author anyflow
@@ -32,9 +33,28 @@ public class HttpResponse extends DefaultFullHttpResponse {
 
 	private static final Logger logger = LoggerFactory.getLogger(HttpResponse.class);
 
+	private ByteBuf content;
+	private ResponseStream stream;
+
 	public static HttpResponse createServerDefault(String requestCookie) {
+		return createServerDefault(requestCookie, Unpooled.buffer());
+	}
+
+	/**
+	 * @param requestCookie
+	 * @param allocator
+	 *            allocator of the response content, usually the channel's
+	 *            (pooled direct) allocator. The content is released when the
+	 *            response is written.
+	 * @return server default response
+	 */
+	public static HttpResponse createServerDefault(String requestCookie, ByteBufAllocator allocator) {
+		return createServerDefault(requestCookie, allocator.buffer());
+	}
+
+	private static HttpResponse createServerDefault(String requestCookie, ByteBuf content) {
 
-		HttpResponse ret = new HttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.buffer());
+		HttpResponse ret = new HttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
 
 		ret.headers().set(HttpHeaders.Names.CONTENT_TYPE, "application/json; charset=UTF-8");
 
@@ -65,16 +85,124 @@ public class HttpResponse extends DefaultFullHttpResponse {
 	 * @param status
 	 */
 	private HttpResponse(HttpVersion version, HttpResponseStatus status, ByteBuf content) {
-		super(version, status, content);
+		super(version, status, Unpooled.EMPTY_BUFFER);
+
+		this.content = content;
 	}
 
 	public void setContent(String content) {
+		setContent((CharSequence) content);
+	}
+
+	/**
+	 * Appends the content to the response content in UTF-8, without
+	 * intermediate byte array.
+	 * 
+	 * @param content
+	 */
+	public void setContent(CharSequence content) {
+		if (content == null) { return; }
+
+		ByteBufUtil.writeUtf8(this.content, content);
+
+		if (logger.isDebugEnabled()) {
+			logger.debug(this.content.toString(CharsetUtil.UTF_8));
+		}
+	}
+
+	/**
+	 * Replaces the response content with the buffer. The ownership of the
+	 * buffer is transferred to the response, i.e. it is released when the
+	 * response is written or released.
+	 * 
+	 * @param content
+	 */
+	public void setContent(ByteBuf content) {
 		if (content == null) {
-			content = "";
+			content = Unpooled.EMPTY_BUFFER;
 		}
 
-		content().writeBytes(content.getBytes(CharsetUtil.UTF_8));
-		logger.debug(content().toString(CharsetUtil.UTF_8));
+		ByteBuf old = this.content;
+		this.content = content;
+
+		if (old != content) {
+			old.release();
+		}
+	}
+
+	/**
+	 * @return chunked body stream of the response, for output which should not
+	 *         be built in memory. Once it is written, the status, the headers
+	 *         and the content of the response are not changeable.
+	 * @throws IllegalStateException
+	 *             if the response is not a server response being served.
+	 */
+	public ResponseStream stream() {
+		if (stream == null) { throw new IllegalStateException("The response is not streamable."); }
+
+		return stream;
+	}
+
+	void stream(ResponseStream stream) {
+		this.stream = stream;
+	}
+
+	/**
+	 * @return whether the body was sent via {@link #stream()}.
+	 */
+	boolean isStreamed() {
+		return stream != null && stream.isOpened();
+	}
+
+	@Override
+	public ByteBuf content() {
+		return content;
+	}
+
+	@Override
+	public int refCnt() {
+		return content.refCnt();
+	}
+
+	@Override
+	public FullHttpResponse retain() {
+		content.retain();
+		return this;
+	}
+
+	@Override
+	public FullHttpResponse retain(int increment) {
+		content.retain(increment);
+		return this;
+	}
+
+	@Override
+	public boolean release() {
+		return content.release();
+	}
+
+	@Override
+	public boolean release(int decrement) {
+		return content.release(decrement);
+	}
+
+	@Override
+	public FullHttpResponse copy() {
+		return replicate(content.copy());
+	}
+
+	@Override
+	public FullHttpResponse duplicate() {
+		return replicate(content.duplicate());
+	}
+
+	private HttpResponse replicate(ByteBuf content) {
+		HttpResponse ret = new HttpResponse(getProtocolVersion(), getStatus(), content);
+
+		ret.headers().set(headers());
+		ret.trailingHeaders().set(trailingHeaders());
+
+		return ret;
 	}
 
 	@Override
@@ -94,24 +222,24 @@ public class HttpResponse extends DefaultFullHttpResponse {
 			}
 		}
 
-		if ("false"
-				.equalsIgnoreCase(Settings.SELF.getProperty("menton.logging.logWebResourceHttpResponseContent", "false"))
-				&& Settings.SELF.webResourceExtensionToMimes().containsValue(headers().get(Names.CONTENT_TYPE))) {
+		SettingsSnapshot settings = Settings.SELF.snapshot();
+
+		if (settings.logWebResourceHttpResponseContent() == false
+				&& settings.webResourceExtensionToMimes().containsValue(headers().get(Names.CONTENT_TYPE))) {
 			buf.append("Content: WEB RESOURCE CONTENT");
 			return buf.toString();
 		}
 
-		String content = this.content().toString(CharsetUtil.UTF_8);
-
-		int size = Ints.tryParse(Settings.SELF.getProperty("menton.logging.httpResponseContentSize", "100"));
+		int size = settings.httpResponseContentSize();
 
 		if (size < 0) {
-			buf.append("Content:\r\n   ").append(content);
+			buf.append("Content:\r\n   ").append(this.content().toString(CharsetUtil.UTF_8));
 		}
 		else {
-			int index = content.length() < size ? content.length() : size - 1;
-			buf.append("The first " + size + " character(s) of response content:\r\n   ")
-					.append(content.substring(0, index));
+			// decodes the logged part only, not the whole content.
+			ByteBuf content = this.content();
+			buf.append("The first " + size + " byte(s) of response content:\r\n   ").append(
+					content.toString(content.readerIndex(), Math.min(size, content.readableBytes()), CharsetUtil.UTF_8));
 		}
 
 		return buf.toString();
@@ -2,4 +2,6 @@ package net.anyflow.menton.http;
 
 public class Literals {
 	public static final String FAILED_TO_FIND_REQUEST_HANDLER = "Failed to find the request handler.";
+	public static final String TOO_MANY_PENDING_REQUESTS = "Too many pending requests. Try again later.";
+	public static final String REQUEST_TIMED_OUT = "The request timed out.";
 }
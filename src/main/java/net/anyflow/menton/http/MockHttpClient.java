@@ -22,7 +22,7 @@ public class MockHttpClient implements IHttpClient {
 		this.httpRequest = new HttpRequest(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri));
 		this.mockServer = mockServer;
 
-		if (httpRequest().uri().getScheme().equalsIgnoreCase("http") == false) {
+		if (httpRequest().normalizedUri().getScheme().equalsIgnoreCase("http") == false) {
 			String message = "HTTP is supported only.";
 			logger.error(message);
 			throw new UnsupportedOperationException(message);
@@ -165,7 +165,7 @@ public class MockHttpClient implements IHttpClient {
 
 	private void setDefaultHeaders() {
 		if (httpRequest().headers().contains(HttpHeaders.Names.HOST) == false) {
-			httpRequest().headers().set(HttpHeaders.Names.HOST, httpRequest().uri().getHost());
+			httpRequest().headers().set(HttpHeaders.Names.HOST, httpRequest().normalizedUri().getHost());
 		}
 		if (httpRequest().headers().contains(HttpHeaders.Names.CONNECTION) == false) {
 			httpRequest().headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
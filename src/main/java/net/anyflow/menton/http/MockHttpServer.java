@@ -5,12 +5,17 @@ import java.net.URISyntaxException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders.Names;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.ReferenceCountUtil;
 import net.anyflow.menton.Settings;
-import net.anyflow.menton.Environment;
 
 public class MockHttpServer {
 
@@ -24,7 +29,7 @@ public class MockHttpServer {
 
 		HttpResponse response = HttpResponse.createServerDefault(httpRequest.headers().get(HttpHeaders.Names.COOKIE));
 
-		HttpRequestHandler.MatchedCriterion mc = HttpRequestHandler.findRequestHandler(httpRequest.uri().getPath(),
+		HttpRequestHandler.MatchedCriterion mc = HttpRequestHandler.findRequestHandler(httpRequest.normalizedUri().getPath(),
 				httpRequest.getMethod().toString());
 
 		if (mc.requestHandlerClass() == null) {
@@ -41,22 +46,36 @@ public class MockHttpServer {
 				request = new HttpRequest(httpRequest, mc.pathParameters());
 
 				HttpRequestHandler handler;
+				BufferedResponseStream stream = new BufferedResponseStream(response);
+				response.stream(stream);
+
 				try {
-					handler = mc.requestHandlerClass().newInstance();
-					handler.initialize(request, response);
+					handler = mc.requestHandler();
 
-					if ("true".equalsIgnoreCase(Settings.SELF.getProperty("menton.logging.writeHttpRequest"))) {
+					if (Settings.SELF.snapshot().writeHttpRequest()) {
 						logger.info(request.toString());
 					}
 
-					response.setContent(handler.service());
+					// AsyncHttpRequestHandler blocks until its future completes.
+					String content = handler.service(request, response);
+
+					if (response.isStreamed()) {
+						stream.collect();
+					}
+					else {
+						response.setContent(content);
+					}
 				}
-				catch (InstantiationException | IllegalAccessException | URISyntaxException e) {
+				catch (InstantiationException | IllegalAccessException | URISyntaxException
+						| UncheckedExecutionException e) {
 					logger.error(e.getMessage(), e);
 
 					response.setStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
 					response.setContent(e.getMessage());
 				}
+				finally {
+					stream.dispose();
+				}
 			}
 			catch (URISyntaxException e) {
 				logger.error(e.getMessage(), e);
@@ -66,31 +85,64 @@ public class MockHttpServer {
 			}
 		}
 
-		setDefaultHeaders(httpRequest, response);
+		HttpRequestRouter.setDefaultHeaders(httpRequest, response, response.content().readableBytes());
 
-		if ("true".equalsIgnoreCase(Settings.SELF.getProperty("menton.logging.writeHttpResponse"))) {
+		if (Settings.SELF.snapshot().writeHttpResponse()) {
 			logger.info(response.toString());
 		}
 
 		return response;
 	}
 
-	private void setDefaultHeaders(FullHttpRequest request, HttpResponse response) {
+	/**
+	 * Response stream which collects the chunks into the response content
+	 * instead of sending them, as the mock server has no connection.
+	 */
+	private static class BufferedResponseStream extends ResponseStream {
+
+		private final EmbeddedChannel channel;
+		private final HttpResponse response;
+
+		private BufferedResponseStream(HttpResponse response) {
+			this(new EmbeddedChannel(new ChannelInboundHandlerAdapter()), response);
+		}
+
+		private BufferedResponseStream(EmbeddedChannel channel, HttpResponse response) {
+			super(channel.pipeline().firstContext(), response);
 
-		response.headers().add(Names.SERVER, Environment.PROJECT_ARTIFACT_ID + " " + Environment.PROJECT_VERSION);
+			this.channel = channel;
+			this.response = response;
+		}
 
-		boolean keepAlive = request.headers().get(HttpHeaders.Names.CONNECTION) == HttpHeaders.Values.KEEP_ALIVE;
-		if (keepAlive) {
-			response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+		@Override
+		void prepare(io.netty.handler.codec.http.HttpResponse header) {
+			// no-op : the response itself is returned with the collected content.
 		}
 
-		if (Settings.SELF.getProperty("menton.httpServer.allowCrossDomain", "false").equalsIgnoreCase("true")) {
-			response.headers().add(Names.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-			response.headers().add(Names.ACCESS_CONTROL_ALLOW_METHODS, "POST, GET, PUT, DELETE");
-			response.headers().add(Names.ACCESS_CONTROL_ALLOW_HEADERS, "X-PINGARUNER");
-			response.headers().add(Names.ACCESS_CONTROL_MAX_AGE, "1728000");
+		/**
+		 * Closes the stream and appends the chunks to the response content.
+		 */
+		private void collect() {
+			close();
+
+			for (Object msg = channel.readOutbound(); msg != null; msg = channel.readOutbound()) {
+				if (msg instanceof HttpContent) {
+					response.content().writeBytes(((HttpContent) msg).content());
+				}
+
+				ReferenceCountUtil.release(msg);
+			}
 		}
 
-		response.headers().set(HttpHeaders.Names.CONTENT_LENGTH, response.content().readableBytes());
+		/**
+		 * Releases the chunks not collected.
+		 */
+		private void dispose() {
+			channel.finish();
+
+			for (Object msg = channel.readOutbound(); msg != null; msg = channel.readOutbound()) {
+				ReferenceCountUtil.release(msg);
+			}
+		}
 	}
-}
\ No newline at end of file
+}
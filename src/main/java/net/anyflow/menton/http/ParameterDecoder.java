@@ -0,0 +1,175 @@
+package net.anyflow.menton.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufProcessor;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Decodes query string and <code>application/x-www-form-urlencoded</code>
+ * parameters in one linear pass, with the rules of
+ * {@link QueryStringDecoder}('&amp;' and ';' separate parameters, '+' is a
+ * space and the parameters over {@link #MAX_PARAMETERS} are ignored).
+ * <p>
+ * Form content is decoded from the buffer directly : no string of the whole
+ * content is built, and components without escapes are read as they are.
+ *
+ * @author anyflow
+ */
+final class ParameterDecoder {
+
+	/**
+	 * Parameters decoded at most, same as {@link QueryStringDecoder}.
+	 */
+	static final int MAX_PARAMETERS = 1024;
+
+	private static final ByteBufProcessor NO_ESCAPE = new ByteBufProcessor() {
+		@Override
+		public boolean process(byte value) throws Exception {
+			return value != '%' && value != '+';
+		}
+	};
+
+	private ParameterDecoder() {
+	}
+
+	/**
+	 * Decodes the query string of the URI.
+	 *
+	 * @param uri
+	 *            request URI. Nothing is decoded if it has no query string.
+	 * @throws IllegalArgumentException
+	 *             if an escape sequence is malformed
+	 */
+	static void decodeQueryString(String uri, Map<String, List<String>> to) {
+		int start = uri.indexOf('?');
+		if (start < 0) { return; }
+
+		int count = 0;
+		String name = null;
+		int pos = start + 1;
+
+		for (int i = pos; i <= uri.length() && count < MAX_PARAMETERS; ++i) {
+			char c = i < uri.length() ? uri.charAt(i) : '&';
+
+			if (c == '=' && name == null) {
+				if (pos != i) {
+					name = decodeComponent(uri.substring(pos, i));
+				}
+				pos = i + 1;
+			}
+			else if (c == '&' || c == ';') {
+				if (name == null && pos != i) {
+					add(to, decodeComponent(uri.substring(pos, i)), "");
+					++count;
+				}
+				else if (name != null) {
+					add(to, name, decodeComponent(uri.substring(pos, i)));
+					++count;
+					name = null;
+				}
+				pos = i + 1;
+			}
+		}
+	}
+
+	private static String decodeComponent(String component) {
+		if (component.indexOf('%') < 0 && component.indexOf('+') < 0) { return component; }
+
+		return QueryStringDecoder.decodeComponent(component, CharsetUtil.UTF_8);
+	}
+
+	/**
+	 * Decodes the readable bytes of the form content. The reader index is not
+	 * changed.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if an escape sequence is malformed
+	 */
+	static void decodeForm(ByteBuf content, Map<String, List<String>> to) {
+		int end = content.writerIndex();
+
+		byte[] scratch = null;
+		int count = 0;
+		String name = null;
+		int pos = content.readerIndex();
+
+		for (int i = pos; i <= end && count < MAX_PARAMETERS; ++i) {
+			byte b = i < end ? content.getByte(i) : (byte) '&';
+
+			if (b == '=' && name == null) {
+				if (pos != i) {
+					scratch = scratch(scratch, i - pos);
+					name = decodeComponent(content, pos, i, scratch);
+				}
+				pos = i + 1;
+			}
+			else if (b == '&' || b == ';') {
+				if (name == null && pos != i) {
+					scratch = scratch(scratch, i - pos);
+					add(to, decodeComponent(content, pos, i, scratch), "");
+					++count;
+				}
+				else if (name != null) {
+					scratch = scratch(scratch, i - pos);
+					add(to, name, decodeComponent(content, pos, i, scratch));
+					++count;
+					name = null;
+				}
+				pos = i + 1;
+			}
+		}
+	}
+
+	private static byte[] scratch(byte[] scratch, int length) {
+		return scratch != null && scratch.length >= length ? scratch : new byte[Math.max(length, 64)];
+	}
+
+	private static String decodeComponent(ByteBuf content, int start, int end, byte[] scratch) {
+		if (content.forEachByte(start, end - start, NO_ESCAPE) < 0) {
+			return content.toString(start, end - start, CharsetUtil.UTF_8);
+		}
+
+		int length = 0;
+		for (int i = start; i < end; ++i) {
+			byte b = content.getByte(i);
+
+			if (b == '+') {
+				scratch[length++] = ' ';
+			}
+			else if (b == '%') {
+				if (i + 2 >= end) {
+					throw new IllegalArgumentException("unterminated escape sequence at index " + i);
+				}
+
+				int high = Character.digit((char) content.getByte(i + 1), 16);
+				int low = Character.digit((char) content.getByte(i + 2), 16);
+				if (high < 0 || low < 0) {
+					throw new IllegalArgumentException("invalid escape sequence at index " + i);
+				}
+
+				scratch[length++] = (byte) ((high << 4) + low);
+				i += 2;
+			}
+			else {
+				scratch[length++] = b;
+			}
+		}
+
+		return new String(scratch, 0, length, CharsetUtil.UTF_8);
+	}
+
+	private static void add(Map<String, List<String>> to, String name, String value) {
+		List<String> values = to.get(name);
+		if (values == null) {
+			values = new ArrayList<String>(1);
+			to.put(name, values);
+		}
+
+		values.add(value);
+	}
+}
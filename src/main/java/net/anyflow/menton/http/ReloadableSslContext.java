@@ -0,0 +1,108 @@
+package net.anyflow.menton.http;
+
+import java.io.File;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+
+import io.netty.handler.ssl.SslContext;
+
+/**
+ * Server SslContext built once from the certificate chain and the private key
+ * files, and shared by all the accepted connections. The files are checked
+ * for modification by a task scheduled every check interval, off the event
+ * loops of the connections, and the context is rebuilt if they are changed.
+ * If the rebuild fails(e.g. the files are being replaced), the previous
+ * context stays in use and the rebuild is retried on the next check.
+ *
+ * @author anyflow
+ */
+final class ReloadableSslContext {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ReloadableSslContext.class);
+
+	private final File certChainFile;
+	private final File privateKeyFile;
+	private final SslOptions options;
+	private final long checkInterval;
+
+	private volatile SslContext context;
+	private long certChainModified;
+	private long privateKeyModified;
+
+	/**
+	 * @param certChainFile
+	 *            X.509 certificate chain file in PEM format
+	 * @param privateKeyFile
+	 *            PKCS#8 private key file in PEM format
+	 * @param options
+	 *            TLS options of the context
+	 * @param checkInterval
+	 *            milliseconds between file modification checks. 0 or negative
+	 *            means the context is never reloaded.
+	 * @throws SSLException
+	 *             if the initial context can not be built.
+	 */
+	ReloadableSslContext(File certChainFile, File privateKeyFile, SslOptions options, long checkInterval)
+			throws SSLException {
+		this.certChainFile = certChainFile;
+		this.privateKeyFile = privateKeyFile;
+		this.options = options;
+		this.checkInterval = checkInterval;
+
+		certChainModified = certChainFile.lastModified();
+		privateKeyModified = privateKeyFile.lastModified();
+		context = build();
+	}
+
+	/**
+	 * @return the current context. No file is accessed.
+	 */
+	SslContext get() {
+		return context;
+	}
+
+	/**
+	 * Schedules the modification check every check interval. The check stops
+	 * when the scheduler is shut down.
+	 *
+	 * @param scheduler
+	 *            scheduler of the check, which should not be the event loop
+	 *            of the connections(e.g. the boss group).
+	 */
+	void scheduleReload(ScheduledExecutorService scheduler) {
+		if (checkInterval <= 0) { return; }
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				reloadIfChanged();
+			}
+		}, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void reloadIfChanged() {
+		long certChainModified = certChainFile.lastModified();
+		long privateKeyModified = privateKeyFile.lastModified();
+
+		if (certChainModified == this.certChainModified && privateKeyModified == this.privateKeyModified) { return; }
+
+		try {
+			context = build();
+		}
+		catch (SSLException | IllegalArgumentException e) {
+			logger.error("Failed to reload the SSL certificate. The previous one is used : " + e.getMessage(), e);
+			return;
+		}
+
+		this.certChainModified = certChainModified;
+		this.privateKeyModified = privateKeyModified;
+
+		logger.info("SSL certificate reloaded from {}.", certChainFile);
+	}
+
+	private SslContext build() throws SSLException {
+		return options.build(certChainFile, privateKeyFile);
+	}
+}
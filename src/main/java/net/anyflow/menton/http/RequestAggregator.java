@@ -0,0 +1,55 @@
+package net.anyflow.menton.http;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * HttpObjectAggregator which passes through requests of streaming handlers(
+ * {@link HttpRequestHandler.Handles#streaming()}) as they are, i.e. the
+ * request head and its content chunks.
+ *
+ * @author anyflow
+ */
+class RequestAggregator extends HttpObjectAggregator {
+
+	private boolean streaming;
+
+	RequestAggregator(int maxContentLength) {
+		super(maxContentLength);
+	}
+
+	@Override
+	public boolean acceptInboundMessage(Object msg) throws Exception {
+		if (msg instanceof HttpRequest) {
+			streaming = isStreaming((HttpRequest) msg);
+		}
+
+		if (streaming) {
+			if (msg instanceof LastHttpContent) {
+				streaming = false;
+			}
+			return false;
+		}
+
+		return super.acceptInboundMessage(msg);
+	}
+
+	private static boolean isStreaming(HttpRequest request) {
+		RouteTable routeTable = HttpRequestHandler.routeTable();
+		if (routeTable.hasStreamingRoute() == false) { return false; }
+
+		try {
+			RouteTable.Route route = routeTable.find(new URI(request.getUri()).getPath(), request.getMethod().name())
+					.route();
+
+			return route != null && route.streaming();
+		}
+		catch (URISyntaxException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package net.anyflow.menton.http;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.ChannelPromiseNotifier;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Keeps the responses of pipelined requests in request order and manages the
+ * persistence of the connection.
+ * <ul>
+ * <li>A request is passed to the router after the response of the previous
+ * one is written completely. Requests arriving meanwhile are queued and
+ * reading from the connection is suspended.</li>
+ * <li>The connection is closed after the response if either the request or
+ * the response is not keep-alive.</li>
+ * <li>The response of the maxRequests-th request on the connection is sent
+ * with <code>Connection: close</code>.</li>
+ * <li>Connections idle({@link IdleStateEvent}) between requests are
+ * closed.</li>
+ * </ul>
+ * Upgraded(WebSocket) connections are passed through untouched.
+ *
+ * @author anyflow
+ */
+class ResponseSequencer extends ChannelDuplexHandler {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ResponseSequencer.class);
+
+	private final int maxRequests;
+
+	private final Queue<HttpObject> pending = new ArrayDeque<HttpObject>();
+
+	private boolean responding;
+	private boolean requestKeepAlive;
+	private boolean keepAlive = true;
+	private boolean upgraded;
+	private int requestCount;
+
+	/**
+	 * @param maxRequests
+	 *            requests served on a connection at most. 0 or negative means
+	 *            unlimited.
+	 */
+	ResponseSequencer(int maxRequests) {
+		this.maxRequests = maxRequests;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (upgraded || msg instanceof HttpObject == false) {
+			ctx.fireChannelRead(msg);
+			return;
+		}
+
+		if (pending.isEmpty() == false || (responding && msg instanceof HttpRequest)) {
+			pending.add((HttpObject) msg);
+			ctx.channel().config().setAutoRead(false);
+			return;
+		}
+
+		dispatch(ctx, (HttpObject) msg);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (upgraded || responding == false) {
+			ctx.write(msg, promise);
+			return;
+		}
+
+		if (msg instanceof HttpResponse) {
+			HttpResponse response = (HttpResponse) msg;
+
+			if (response.getStatus().code() == HttpResponseStatus.SWITCHING_PROTOCOLS.code()) {
+				upgraded = true;
+				responding = false;
+				ctx.write(msg, promise);
+				return;
+			}
+
+			if (response.getStatus().code() == HttpResponseStatus.CONTINUE.code()) {
+				ctx.write(msg, promise);
+				return;
+			}
+
+			prepare(response);
+		}
+
+		if (msg instanceof LastHttpContent == false) {
+			ctx.write(msg, promise);
+			return;
+		}
+
+		responding = false;
+
+		if (keepAlive) {
+			ctx.write(msg, promise);
+			dispatchPending(ctx);
+			return;
+		}
+
+		// the promise of the writer may be void, which takes no listener.
+		ChannelPromise written = ctx.newPromise();
+		written.addListener(new ChannelPromiseNotifier(promise));
+		written.addListener(ChannelFutureListener.CLOSE);
+
+		ctx.write(msg, written);
+	}
+
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+		if (evt instanceof IdleStateEvent && upgraded == false) {
+			if (responding == false && pending.isEmpty()) {
+				logger.debug("Idle connection is closed : {}", ctx.channel());
+				ctx.close();
+			}
+			return;
+		}
+
+		ctx.fireUserEventTriggered(evt);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		releasePending();
+
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		releasePending();
+	}
+
+	/**
+	 * Decides the persistence of the connection.
+	 */
+	private void prepare(HttpResponse response) {
+		keepAlive = requestKeepAlive && HttpHeaders.isKeepAlive(response)
+				&& (maxRequests <= 0 || requestCount < maxRequests);
+
+		if (keepAlive == false) {
+			response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+		}
+	}
+
+	private void dispatch(ChannelHandlerContext ctx, HttpObject msg) {
+		if (msg instanceof HttpRequest) {
+			responding = true;
+			requestKeepAlive = HttpHeaders.isKeepAlive((HttpRequest) msg);
+			++requestCount;
+		}
+
+		ctx.fireChannelRead(msg);
+	}
+
+	/**
+	 * Dispatches the queued requests after the current write returns.
+	 */
+	private void dispatchPending(final ChannelHandlerContext ctx) {
+		if (pending.isEmpty()) { return; }
+
+		ctx.executor().execute(new Runnable() {
+			@Override
+			public void run() {
+				if (ctx.channel().isActive() == false) { return; }
+
+				while (pending.isEmpty() == false) {
+					if (responding && pending.peek() instanceof HttpRequest) {
+						break;
+					}
+
+					dispatch(ctx, pending.poll());
+				}
+
+				ctx.fireChannelReadComplete();
+
+				if (pending.isEmpty()) {
+					ctx.channel().config().setAutoRead(true);
+				}
+			}
+		});
+	}
+
+	private void releasePending() {
+		HttpObject msg;
+		while ((msg = pending.poll()) != null) {
+			ReferenceCountUtil.release(msg);
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package net.anyflow.menton.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.ClosedChannelException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * Chunked(<code>Transfer-Encoding: chunked</code>) body of a server response,
+ * for large or incremental handler output which should not be built in
+ * memory. Obtained by {@link HttpResponse#stream()}.
+ * <p>
+ * The status and the headers of the response are sent on the first write.
+ * Changes to them after that, and the string returned by the handler, are
+ * ignored. The stream is closed by the server when the handler returns.
+ * <p>
+ * Off the event loop(WORKER handlers), writes block while the channel is not
+ * writable, i.e. the client reads slower than the handler writes. On the event
+ * loop writes never block, so handlers should check {@link #isWritable()}.
+ *
+ * @author anyflow
+ */
+public abstract class ResponseStream {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	private final ChannelHandlerContext ctx;
+	private final HttpResponse response;
+
+	private boolean opened;
+	private boolean closed;
+	private int unflushed;
+
+	ResponseStream(ChannelHandlerContext ctx, HttpResponse response) {
+		this.ctx = ctx;
+		this.response = response;
+	}
+
+	/**
+	 * Called once before the header is written.
+	 *
+	 * @param header
+	 *            status and headers copied from the response
+	 */
+	abstract void prepare(io.netty.handler.codec.http.HttpResponse header);
+
+	/**
+	 * @return whether the header was written, i.e. the response is streamed.
+	 */
+	public boolean isOpened() {
+		return opened;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return whether the channel accepts writes without queueing over the
+	 *         write buffer high water mark.
+	 */
+	public boolean isWritable() {
+		return ctx.channel().isWritable();
+	}
+
+	/**
+	 * Writes the text in UTF-8 as a chunk.
+	 *
+	 * @param text
+	 * @return future of the write
+	 */
+	public ChannelFuture write(CharSequence text) {
+		ByteBuf chunk = ctx.alloc().buffer(text.length());
+		ByteBufUtil.writeUtf8(chunk, text);
+
+		return write(chunk);
+	}
+
+	/**
+	 * Writes the buffer as a chunk. The ownership of the buffer is transferred
+	 * to the stream.
+	 *
+	 * @param chunk
+	 * @return future of the write
+	 */
+	public ChannelFuture write(ByteBuf chunk) {
+		if (closed) {
+			chunk.release();
+			throw new IllegalStateException("The response stream is already closed.");
+		}
+
+		open();
+
+		if (chunk.isReadable() == false) {
+			chunk.release();
+			return ctx.newSucceededFuture();
+		}
+
+		unflushed += chunk.readableBytes();
+		ChannelFuture ret = ctx.write(new DefaultHttpContent(chunk));
+
+		if (unflushed >= CHUNK_SIZE || ctx.channel().isWritable() == false) {
+			flush();
+			awaitWritable();
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Flushes the chunks written so far to the client.
+	 */
+	public void flush() {
+		unflushed = 0;
+		ctx.flush();
+	}
+
+	/**
+	 * Writes the last chunk. Closing a closed stream does nothing.
+	 *
+	 * @return future of the write
+	 */
+	public ChannelFuture close() {
+		if (closed) { return ctx.newSucceededFuture(); }
+
+		open();
+		closed = true;
+
+		unflushed = 0;
+		return ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+	}
+
+	/**
+	 * @return output stream which writes to the response stream in chunks of
+	 *         8KB. Closing it closes the response stream. Writes throw
+	 *         {@link ClosedChannelException} if the client disconnected.
+	 */
+	public OutputStream outputStream() {
+		return new OutputStream() {
+
+			private ByteBuf buffer;
+
+			@Override
+			public void write(int b) throws IOException {
+				buffer().writeByte(b);
+				writeFull();
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				while (len > 0) {
+					ByteBuf buffer = buffer();
+					int length = Math.min(len, buffer.writableBytes());
+
+					buffer.writeBytes(b, off, length);
+					off += length;
+					len -= length;
+
+					writeFull();
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				writeBuffer();
+				ResponseStream.this.flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (closed) { return; }
+
+				writeBuffer();
+				ResponseStream.this.close();
+			}
+
+			private ByteBuf buffer() throws IOException {
+				if (ctx.channel().isActive() == false) { throw new ClosedChannelException(); }
+
+				if (buffer == null) {
+					buffer = ctx.alloc().buffer(CHUNK_SIZE, CHUNK_SIZE);
+				}
+				return buffer;
+			}
+
+			private void writeFull() {
+				if (buffer.isWritable()) { return; }
+
+				writeBuffer();
+			}
+
+			private void writeBuffer() {
+				if (buffer == null) { return; }
+
+				ByteBuf chunk = buffer;
+				buffer = null;
+
+				ResponseStream.this.write(chunk);
+			}
+		};
+	}
+
+	private void open() {
+		if (opened) { return; }
+
+		opened = true;
+
+		DefaultHttpResponse header = new DefaultHttpResponse(response.getProtocolVersion(), response.getStatus());
+		header.headers().set(response.headers());
+
+		prepare(header);
+
+		ctx.write(header);
+	}
+
+	/**
+	 * Waits until the channel is writable or closed. Returns immediately on
+	 * the event loop.
+	 */
+	private void awaitWritable() {
+		if (ctx.executor().inEventLoop()) { return; }
+
+		synchronized (this) {
+			while (ctx.channel().isWritable() == false && ctx.channel().isActive()) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wakes up the writer waiting for writability. Called by the router on
+	 * writability change and channel inactivation.
+	 */
+	synchronized void writabilityChanged() {
+		notifyAll();
+	}
+}
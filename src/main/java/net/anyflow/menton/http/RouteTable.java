@@ -0,0 +1,482 @@
+package net.anyflow.menton.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import net.anyflow.menton.Settings;
+
+/**
+ * Compiled request handler route table. Routes are kept in a prefix tree per
+ * HTTP method whose nodes are path segments, with a single wildcard child per
+ * node for <code>{param}</code> segments. Lookup cost is proportional to the
+ * requested path length, not to the number of registered routes.
+ * <p>
+ * The table is built once (on server start) and only read afterwards. Routes
+ * come from the manifest generated by {@link HandlesProcessor} or, if no
+ * manifest exists, from classpath scanning.
+ *
+ * @author anyflow
+ */
+class RouteTable {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RouteTable.class);
+
+	/**
+	 * Classpath resource path of the route manifest.
+	 */
+	static final String MANIFEST_PATH = "META-INF/menton/request-handlers";
+
+	private final Map<String, Node> roots = Maps.newHashMap();
+	private int size;
+	private int maxParamCount;
+	private boolean hasStreamingRoute;
+	private final Map<Class<? extends HttpRequestHandler>, HttpRequestHandler> singletons = Maps.newHashMap();
+	private final Map<Class<? extends HttpRequestHandler>, AtomicInteger> pendingRequests = Maps.newHashMap();
+
+	/**
+	 * Builds the route table from {@link HttpRequestHandler.Handles} annotation
+	 * of the given handler classes.
+	 *
+	 * @param handlerClasses
+	 *            request handler classes
+	 * @return compiled route table
+	 * @throws IllegalArgumentException
+	 *             if a handler is invalid(see {@link #validate}).
+	 */
+	static RouteTable build(Iterable<Class<? extends HttpRequestHandler>> handlerClasses) {
+		RouteTable ret = new RouteTable();
+
+		for (Class<? extends HttpRequestHandler> item : handlerClasses) {
+			HttpRequestHandler.Handles annotation = item.getAnnotation(HttpRequestHandler.Handles.class);
+
+			if (annotation == null) {
+				continue;
+			}
+
+			for (String method : annotation.httpMethods()) {
+				for (String path : annotation.paths()) {
+					ret.add(method, path, item, annotation.webResourcePath());
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Builds the route table from the route manifests({@value #MANIFEST_PATH})
+	 * in classpath.
+	 *
+	 * @param classLoader
+	 *            class loader to find manifests and handler classes
+	 * @param requestHandlerPackageRoot
+	 *            root package prefix of request handlers. If null, all the
+	 *            handlers in the manifests are registered.
+	 * @return compiled route table. null if no manifest exists.
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if a handler is invalid(see {@link #validate}).
+	 */
+	static RouteTable load(ClassLoader classLoader, String requestHandlerPackageRoot) throws IOException {
+		Enumeration<URL> manifests = classLoader.getResources(MANIFEST_PATH);
+		if (manifests.hasMoreElements() == false) { return null; }
+
+		RouteTable ret = new RouteTable();
+		Splitter splitter = Splitter.on(',').trimResults().omitEmptyStrings();
+
+		while (manifests.hasMoreElements()) {
+			URL manifest = manifests.nextElement();
+
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(manifest.openStream(), Charsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty() || line.startsWith("#")) {
+						continue;
+					}
+
+					String[] tokens = line.split("\t", -1);
+					if (tokens.length < 4) {
+						logger.warn("Invalid route manifest entry in {} : {}", manifest, line);
+						continue;
+					}
+
+					if (requestHandlerPackageRoot != null && tokens[0].startsWith(requestHandlerPackageRoot) == false) {
+						continue;
+					}
+
+					Class<? extends HttpRequestHandler> handlerClass;
+					try {
+						handlerClass = Class.forName(tokens[0], false, classLoader)
+								.asSubclass(HttpRequestHandler.class);
+					}
+					catch (ClassNotFoundException | ClassCastException e) {
+						logger.warn("Request handler class in {} is not available : {}", manifest, tokens[0]);
+						continue;
+					}
+
+					if (handlerClass.getAnnotation(HttpRequestHandler.Handles.class) == null) {
+						// stale entry of incremental compile.
+						logger.warn("Request handler class in {} is not annotated with @Handles : {}", manifest,
+								tokens[0]);
+						continue;
+					}
+
+					for (String method : splitter.split(tokens[2])) {
+						for (String path : splitter.split(tokens[1])) {
+							ret.add(method, path, handlerClass, tokens[3]);
+						}
+					}
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @return the number of registered (HTTP method, path) pairs
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return whether any route streams its request body.
+	 */
+	boolean hasStreamingRoute() {
+		return hasStreamingRoute;
+	}
+
+	/**
+	 * @param httpMethod
+	 *            HTTP method
+	 * @param rawPath
+	 *            handler path. If it does not start with '/', context root is
+	 *            prefixed.
+	 * @param handlerClass
+	 *            request handler class
+	 */
+	void add(String httpMethod, String rawPath, Class<? extends HttpRequestHandler> handlerClass) {
+		add(httpMethod, rawPath, handlerClass, "none");
+	}
+
+	/**
+	 * @param httpMethod
+	 *            HTTP method
+	 * @param rawPath
+	 *            handler path. If it does not start with '/', context root is
+	 *            prefixed.
+	 * @param handlerClass
+	 *            request handler class
+	 * @param webResourcePath
+	 *            web resource path which the handler serves. "none" if not.
+	 * @throws IllegalArgumentException
+	 *             if the handler is SINGLETON scope but not stateless(see
+	 *             {@link #validate}), or can not be instantiated.
+	 */
+	void add(String httpMethod, String rawPath, Class<? extends HttpRequestHandler> handlerClass,
+			String webResourcePath) {
+		String path = (rawPath.charAt(0) == '/') ? rawPath : Settings.SELF.httpContextRoot() + rawPath;
+		String method = httpMethod.toUpperCase(Locale.ENGLISH);
+
+		HttpRequestHandler.Handles annotation = handlerClass.getAnnotation(HttpRequestHandler.Handles.class);
+
+		validate(handlerClass, annotation);
+		HttpRequestHandler singleton = singleton(handlerClass, annotation);
+
+		Node root = roots.get(method);
+		if (root == null) {
+			root = new Node();
+			roots.put(method, root);
+		}
+
+		Node node = root;
+		List<String> paramNames = Lists.newArrayList();
+
+		for (String segment : segments(path)) {
+			if (segment.length() > 1 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}') {
+				paramNames.add(segment.substring(1, segment.length() - 1));
+
+				if (node.wildcard == null) {
+					node.wildcard = new Node();
+				}
+				node = node.wildcard;
+			}
+			else {
+				String key = segment.toLowerCase(Locale.ENGLISH);
+
+				if (node.children == null) {
+					node.children = Maps.newHashMap();
+				}
+
+				Node child = node.children.get(key);
+				if (child == null) {
+					child = new Node();
+					node.children.put(key, child);
+				}
+				node = child;
+			}
+		}
+
+		if (node.route != null) {
+			logger.warn("Duplicated route {} {} : {} is ignored({} is already registered).",
+					new Object[] { method, path, handlerClass.getName(), node.route.handlerClass.getName() });
+			return;
+		}
+
+		node.route = new Route(handlerClass, path, webResourcePath, paramNames.toArray(new String[paramNames.size()]),
+				annotation, singleton, pendingRequests(handlerClass));
+		maxParamCount = Math.max(maxParamCount, paramNames.size());
+		hasStreamingRoute |= node.route.streaming();
+		++size;
+	}
+
+	/**
+	 * @param requestedPath
+	 *            requested URI path(without query string)
+	 * @param httpMethod
+	 *            HTTP method
+	 * @return matched criterion. If no route matched,
+	 *         {@link HttpRequestHandler.MatchedCriterion#requestHandlerClass()}
+	 *         returns null.
+	 */
+	HttpRequestHandler.MatchedCriterion find(String requestedPath, String httpMethod) {
+		Node root = roots.get(httpMethod.toUpperCase(Locale.ENGLISH));
+
+		if (root == null || requestedPath.length() <= 0 || requestedPath.charAt(0) != '/') {
+			return new HttpRequestHandler.MatchedCriterion();
+		}
+
+		int[] wildcardBounds = new int[maxParamCount * 2];
+		Node matched = find(root, requestedPath, 1, wildcardBounds, 0);
+
+		if (matched == null) { return new HttpRequestHandler.MatchedCriterion(); }
+
+		Map<String, String> pathParameters = Maps.newHashMap();
+		for (int i = 0; i < matched.route.paramNames.length; ++i) {
+			pathParameters.put(matched.route.paramNames[i],
+					requestedPath.substring(wildcardBounds[i * 2], wildcardBounds[i * 2 + 1]));
+		}
+
+		return new HttpRequestHandler.MatchedCriterion(matched.route, httpMethod, pathParameters);
+	}
+
+	/**
+	 * Checks that SINGLETON scope handler extends
+	 * {@link StatelessHttpRequestHandler} or {@link AsyncHttpRequestHandler},
+	 * whose service methods take the request and the response as arguments.
+	 * Otherwise the shared instance would be bound to the request.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the handler is SINGLETON scope but extends neither.
+	 */
+	static void validate(Class<? extends HttpRequestHandler> handlerClass, HttpRequestHandler.Handles annotation) {
+		if (annotation == null || annotation.scope() != HttpRequestHandler.Scope.SINGLETON) { return; }
+		if (StatelessHttpRequestHandler.class.isAssignableFrom(handlerClass)
+				|| AsyncHttpRequestHandler.class.isAssignableFrom(handlerClass)) { return; }
+
+		throw new IllegalArgumentException(handlerClass.getName()
+				+ " is SINGLETON scope but extends neither StatelessHttpRequestHandler nor AsyncHttpRequestHandler.");
+	}
+
+	/**
+	 * @return the shared instance if the handler is SINGLETON scope, otherwise
+	 *         null.
+	 */
+	private HttpRequestHandler singleton(Class<? extends HttpRequestHandler> handlerClass,
+			HttpRequestHandler.Handles annotation) {
+		if (annotation == null || annotation.scope() != HttpRequestHandler.Scope.SINGLETON) { return null; }
+
+		HttpRequestHandler ret = singletons.get(handlerClass);
+		if (ret != null) { return ret; }
+
+		try {
+			ret = handlerClass.newInstance();
+		}
+		catch (InstantiationException | IllegalAccessException e) {
+			throw new IllegalArgumentException("Failed to instantiate " + handlerClass.getName(), e);
+		}
+
+		singletons.put(handlerClass, ret);
+		return ret;
+	}
+
+	/**
+	 * @return pending request counter of the handler, shared by all the routes
+	 *         of it.
+	 */
+	private AtomicInteger pendingRequests(Class<? extends HttpRequestHandler> handlerClass) {
+		AtomicInteger ret = pendingRequests.get(handlerClass);
+		if (ret != null) { return ret; }
+
+		ret = new AtomicInteger();
+		pendingRequests.put(handlerClass, ret);
+		return ret;
+	}
+
+	/**
+	 * Matches the segment starting at <code>start</code>. Literal children
+	 * take precedence over the wildcard child.
+	 */
+	private Node find(Node node, String path, int start, int[] wildcardBounds, int wildcardCount) {
+		int end = path.indexOf('/', start);
+		boolean last = end < 0;
+		if (last) {
+			end = path.length();
+		}
+
+		if (node.children != null) {
+			Node child = node.children.get(path.substring(start, end).toLowerCase(Locale.ENGLISH));
+
+			if (child != null) {
+				Node ret = last ? child.terminal() : find(child, path, end + 1, wildcardBounds, wildcardCount);
+				if (ret != null) { return ret; }
+			}
+		}
+
+		if (node.wildcard != null) {
+			wildcardBounds[wildcardCount * 2] = start;
+			wildcardBounds[wildcardCount * 2 + 1] = end;
+
+			return last ? node.wildcard.terminal()
+					: find(node.wildcard, path, end + 1, wildcardBounds, wildcardCount + 1);
+		}
+
+		return null;
+	}
+
+	private static List<String> segments(String path) {
+		List<String> ret = Lists.newArrayList();
+
+		int start = 1;
+		while (true) {
+			int end = path.indexOf('/', start);
+			if (end < 0) {
+				ret.add(path.substring(start));
+				return ret;
+			}
+
+			ret.add(path.substring(start, end));
+			start = end + 1;
+		}
+	}
+
+	private static class Node {
+
+		private Map<String, Node> children;
+		private Node wildcard;
+		private Route route;
+
+		private Node terminal() {
+			return route == null ? null : this;
+		}
+	}
+
+	/**
+	 * Handler metadata of a registered (HTTP method, path) pair.
+	 */
+	static class Route {
+
+		private final Class<? extends HttpRequestHandler> handlerClass;
+		private final String criterionPath;
+		private final String webResourcePath;
+		private final String[] paramNames;
+		private final HttpRequestHandler singleton;
+		private final HttpRequestHandler.Execution execution;
+		private final int maxPendingRequests;
+		private final boolean compress;
+		private final boolean streaming;
+		private final boolean async;
+		private final int timeout;
+		private final AtomicInteger pendingRequests;
+
+		private Route(Class<? extends HttpRequestHandler> handlerClass, String criterionPath, String webResourcePath,
+				String[] paramNames, HttpRequestHandler.Handles annotation, HttpRequestHandler singleton,
+				AtomicInteger pendingRequests) {
+			this.handlerClass = handlerClass;
+			this.criterionPath = criterionPath;
+			this.webResourcePath = webResourcePath;
+			this.paramNames = paramNames;
+			this.singleton = singleton;
+			this.execution = annotation == null ? HttpRequestHandler.Execution.DEFAULT : annotation.execution();
+			this.maxPendingRequests = annotation == null ? 0 : annotation.maxPendingRequests();
+			this.compress = annotation == null ? true : annotation.compress();
+			this.streaming = annotation == null ? false : annotation.streaming();
+			this.async = AsyncHttpRequestHandler.class.isAssignableFrom(handlerClass);
+			this.timeout = annotation == null ? 0 : annotation.timeout();
+			this.pendingRequests = pendingRequests;
+		}
+
+		Class<? extends HttpRequestHandler> handlerClass() {
+			return handlerClass;
+		}
+
+		String criterionPath() {
+			return criterionPath;
+		}
+
+		String webResourcePath() {
+			return webResourcePath;
+		}
+
+		HttpRequestHandler requestHandler() throws InstantiationException, IllegalAccessException {
+			return singleton != null ? singleton : handlerClass.newInstance();
+		}
+
+		HttpRequestHandler.Execution execution() {
+			return execution;
+		}
+
+		boolean compress() {
+			return compress;
+		}
+
+		boolean streaming() {
+			return streaming;
+		}
+
+		boolean async() {
+			return async;
+		}
+
+		/**
+		 * @return timeout of asynchronous handler in milliseconds. 0 or
+		 *         negative means no timeout.
+		 */
+		int timeout() {
+			if (timeout != 0) { return timeout; }
+
+			return Settings.SELF.snapshot().asyncTimeout();
+		}
+
+		/**
+		 * Counts a request pending on the business executor. The count is per
+		 * handler class, across all the paths and methods it handles.
+		 * 
+		 * @return false if the handler's pending request limit is reached.
+		 */
+		boolean tryAcquire() {
+			if (pendingRequests.incrementAndGet() <= maxPendingRequests || maxPendingRequests <= 0) { return true; }
+
+			pendingRequests.decrementAndGet();
+			return false;
+		}
+
+		void release() {
+			pendingRequests.decrementAndGet();
+		}
+	}
+}
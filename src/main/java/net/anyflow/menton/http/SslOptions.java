@@ -0,0 +1,238 @@
+package net.anyflow.menton.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import net.anyflow.menton.Settings;
+
+/**
+ * TLS options of the server SslContext. Configured by settings below.
+ * <ul>
+ * <li>menton.ssl.provider : auto(default), openssl or jdk. 'auto' selects
+ * OpenSSL(netty-tcnative) if available, otherwise JDK. If 'openssl' is set but
+ * not available, JDK is used.</li>
+ * <li>menton.ssl.sessionCacheSize : the number of cached sessions for
+ * abbreviated handshakes(0 : provider default).</li>
+ * <li>menton.ssl.sessionTimeout : seconds a cached session is valid(0 :
+ * provider default).</li>
+ * <li>menton.ssl.sessionTicketKeyFile : file of session ticket keys(48 bytes
+ * each), shared by the servers behind a balancer so that tickets issued by
+ * one are accepted by the others. OpenSSL only. If empty, OpenSSL generates
+ * random keys.</li>
+ * <li>menton.ssl.ciphers : comma separated cipher suites in preference
+ * order. Suites the provider does not support are skipped. If empty, the
+ * provider defaults are used.</li>
+ * <li>menton.ssl.alpnProtocols : comma separated ALPN protocols in preference
+ * order. If empty, ALPN is not advertised. h2 and http/1.1 are served. Other
+ * protocols are skipped, so that clients do not select them.</li>
+ * </ul>
+ *
+ * @author anyflow
+ */
+final class SslOptions {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SslOptions.class);
+
+	/**
+	 * ALPN protocols the server pipeline speaks.
+	 */
+	private static final Set<String> SERVED_PROTOCOLS = ImmutableSet.of(ApplicationProtocolNames.HTTP_2,
+			ApplicationProtocolNames.HTTP_1_1);
+
+	private final SslProvider provider;
+	private final long sessionCacheSize;
+	private final long sessionTimeout;
+	private final File sessionTicketKeyFile;
+	private final List<String> ciphers;
+	private final List<String> alpnProtocols;
+
+	/**
+	 * @param sessionTicketKeyFile
+	 *            nullable
+	 * @param ciphers
+	 *            empty means the provider defaults.
+	 * @param alpnProtocols
+	 *            empty means no ALPN.
+	 */
+	SslOptions(SslProvider provider, long sessionCacheSize, long sessionTimeout, File sessionTicketKeyFile,
+			List<String> ciphers, List<String> alpnProtocols) {
+		this.provider = provider;
+		this.sessionCacheSize = sessionCacheSize;
+		this.sessionTimeout = sessionTimeout;
+		this.sessionTicketKeyFile = sessionTicketKeyFile;
+		this.ciphers = ImmutableList.copyOf(ciphers);
+		this.alpnProtocols = ImmutableList.copyOf(alpnProtocols);
+	}
+
+	/**
+	 * @return options of the provider with the provider defaults.
+	 */
+	static SslOptions defaults(SslProvider provider) {
+		return new SslOptions(provider, 0, 0, null, ImmutableList.<String> of(), ImmutableList.<String> of());
+	}
+
+	static SslOptions fromSettings() {
+		Splitter splitter = Splitter.on(',').trimResults().omitEmptyStrings();
+		String ticketKeyFile = Settings.SELF.getProperty("menton.ssl.sessionTicketKeyFile", "");
+
+		return new SslOptions(selectProvider(Settings.SELF.getProperty("menton.ssl.provider", "auto")),
+				Settings.SELF.getInt("menton.ssl.sessionCacheSize", 0),
+				Settings.SELF.getInt("menton.ssl.sessionTimeout", 0),
+				ticketKeyFile.isEmpty() ? null : new File(ticketKeyFile),
+				splitter.splitToList(Settings.SELF.getProperty("menton.ssl.ciphers", "")),
+				servedProtocols(splitter.splitToList(Settings.SELF.getProperty("menton.ssl.alpnProtocols", ""))));
+	}
+
+	/**
+	 * @param protocols
+	 *            ALPN protocols in preference order
+	 * @return the protocols the server speaks
+	 */
+	static List<String> servedProtocols(List<String> protocols) {
+		ImmutableList.Builder<String> ret = ImmutableList.builder();
+
+		for (String protocol : protocols) {
+			if (SERVED_PROTOCOLS.contains(protocol)) {
+				ret.add(protocol);
+			}
+			else {
+				logger.warn("ALPN protocol '{}' is not served. It is not advertised.", protocol);
+			}
+		}
+
+		return ret.build();
+	}
+
+	/**
+	 * @param name
+	 *            auto, openssl or jdk
+	 * @return provider by the name. OpenSSL is returned only if available.
+	 */
+	static SslProvider selectProvider(String name) {
+		if ("jdk".equalsIgnoreCase(name)) { return SslProvider.JDK; }
+
+		if (OpenSsl.isAvailable()) { return SslProvider.OPENSSL; }
+
+		if ("openssl".equalsIgnoreCase(name)) {
+			logger.warn("OpenSSL provider is not available. JDK provider will be used instead.",
+					OpenSsl.unavailabilityCause());
+		}
+
+		return SslProvider.JDK;
+	}
+
+	SslProvider provider() {
+		return provider;
+	}
+
+	/**
+	 * @param certChainFile
+	 *            X.509 certificate chain file in PEM format
+	 * @param privateKeyFile
+	 *            PKCS#8 private key file in PEM format
+	 * @return server context with the options applied
+	 * @throws SSLException
+	 */
+	SslContext build(File certChainFile, File privateKeyFile) throws SSLException {
+		SslContextBuilder builder = SslContextBuilder.forServer(certChainFile, privateKeyFile).sslProvider(provider)
+				.sessionCacheSize(sessionCacheSize).sessionTimeout(sessionTimeout);
+
+		if (ciphers.isEmpty() == false) {
+			builder.ciphers(ciphers, SupportedCipherSuiteFilter.INSTANCE);
+		}
+
+		if (alpnProtocols.isEmpty() == false) {
+			if (isAlpnSupported()) {
+				builder.applicationProtocolConfig(new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+						ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+						ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT, alpnProtocols));
+			}
+			else {
+				logger.warn("ALPN is not supported by {} provider. {} are not advertised.", provider, alpnProtocols);
+			}
+		}
+
+		SslContext ret = builder.build();
+
+		setTicketKeys(ret.sessionContext());
+
+		logger.info("SSL context built. provider : {}, cipher suites : {}", provider, ret.cipherSuites().size());
+
+		return ret;
+	}
+
+	/**
+	 * @return whether the provider negotiates ALPN. JDK provider requires Java
+	 *         9+ or alpn-boot in the boot classpath.
+	 */
+	boolean isAlpnSupported() {
+		return SslProvider.isAlpnSupported(provider);
+	}
+
+	private void setTicketKeys(SSLSessionContext sessionContext) throws SSLException {
+		if (sessionTicketKeyFile == null) { return; }
+
+		if (sessionContext instanceof OpenSslSessionContext == false) {
+			logger.warn("Session ticket keys are supported by OpenSSL provider only. {} is ignored.",
+					sessionTicketKeyFile);
+			return;
+		}
+
+		byte[] keys;
+		try {
+			keys = Files.toByteArray(sessionTicketKeyFile);
+		}
+		catch (IOException e) {
+			throw new SSLException("Failed to read session ticket keys from " + sessionTicketKeyFile, e);
+		}
+
+		if (keys.length == 0 || keys.length % OpenSslSessionTicketKey.TICKET_KEY_SIZE != 0) {
+			throw new SSLException("Session ticket key file size should be a multiple of "
+					+ OpenSslSessionTicketKey.TICKET_KEY_SIZE + " : " + sessionTicketKeyFile);
+		}
+
+		((OpenSslSessionContext) sessionContext).setTicketKeys(ticketKeys(keys));
+	}
+
+	/**
+	 * @param keys
+	 *            concatenated 48 byte keys, each of which is name, HMAC key
+	 *            and AES key(16 bytes each) in order.
+	 */
+	private static OpenSslSessionTicketKey[] ticketKeys(byte[] keys) {
+		OpenSslSessionTicketKey[] ret = new OpenSslSessionTicketKey[keys.length
+				/ OpenSslSessionTicketKey.TICKET_KEY_SIZE];
+
+		for (int i = 0; i < ret.length; ++i) {
+			int name = i * OpenSslSessionTicketKey.TICKET_KEY_SIZE;
+			int hmacKey = name + OpenSslSessionTicketKey.NAME_SIZE;
+			int aesKey = hmacKey + OpenSslSessionTicketKey.HMAC_KEY_SIZE;
+
+			ret[i] = new OpenSslSessionTicketKey(Arrays.copyOfRange(keys, name, hmacKey),
+					Arrays.copyOfRange(keys, hmacKey, aesKey),
+					Arrays.copyOfRange(keys, aesKey, aesKey + OpenSslSessionTicketKey.AES_KEY_SIZE));
+		}
+
+		return ret;
+	}
+}
@@ -0,0 +1,33 @@
+package net.anyflow.menton.http;
+
+/**
+ * Base class for SINGLETON scope request handler. A single instance serves all
+ * the requests concurrently, so the handler should keep no request state and
+ * use the arguments of {@link #service(HttpRequest, HttpResponse)} instead of
+ * {@link #httpRequest()} and {@link #httpResponse()}.
+ * 
+ * @author anyflow
+ */
+public abstract class StatelessHttpRequestHandler extends HttpRequestHandler {
+
+	/**
+	 * Business logic of the handler. Called concurrently on the shared instance.
+	 * 
+	 * @param request
+	 *            HTTP request
+	 * @param response
+	 *            HTTP response
+	 * @return processed response body string
+	 */
+	@Override
+	public abstract String service(HttpRequest request, HttpResponse response);
+
+	/**
+	 * Not called by the router : {@link #service(HttpRequest, HttpResponse)}
+	 * is the entrypoint of the handler.
+	 */
+	@Override
+	public final String service() {
+		return service(httpRequest(), httpResponse());
+	}
+}
@@ -0,0 +1,93 @@
+package net.anyflow.menton.http;
+
+import java.util.concurrent.ThreadFactory;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.internal.PlatformDependent;
+import net.anyflow.menton.Settings;
+
+/**
+ * Netty transport of server and client channels. Selected by
+ * menton.system.transport setting(auto, nio or epoll).
+ *
+ * @author anyflow
+ */
+public enum Transport {
+
+	NIO {
+		@Override
+		public EventLoopGroup newEventLoopGroup(int threadCount, ThreadFactory threadFactory) {
+			return new NioEventLoopGroup(threadCount, threadFactory);
+		}
+
+		@Override
+		public Class<? extends ServerChannel> serverChannelClass() {
+			return NioServerSocketChannel.class;
+		}
+
+		@Override
+		public Class<? extends SocketChannel> socketChannelClass() {
+			return NioSocketChannel.class;
+		}
+	},
+
+	/**
+	 * Linux native epoll transport. Requires netty-transport-native-epoll
+	 * native library.
+	 */
+	EPOLL {
+		@Override
+		public EventLoopGroup newEventLoopGroup(int threadCount, ThreadFactory threadFactory) {
+			return new EpollEventLoopGroup(threadCount, threadFactory);
+		}
+
+		@Override
+		public Class<? extends ServerChannel> serverChannelClass() {
+			return EpollServerSocketChannel.class;
+		}
+
+		@Override
+		public Class<? extends SocketChannel> socketChannelClass() {
+			return EpollSocketChannel.class;
+		}
+	};
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Transport.class);
+
+	public abstract EventLoopGroup newEventLoopGroup(int threadCount, ThreadFactory threadFactory);
+
+	public abstract Class<? extends ServerChannel> serverChannelClass();
+
+	public abstract Class<? extends SocketChannel> socketChannelClass();
+
+	/**
+	 * @return transport by menton.system.transport setting. 'auto'(default)
+	 *         selects EPOLL if available, otherwise NIO. If 'epoll' is set but
+	 *         not available, NIO is returned.
+	 */
+	public static Transport select() {
+		String transport = Settings.SELF.getProperty("menton.system.transport", "auto");
+
+		if ("nio".equalsIgnoreCase(transport)) { return NIO; }
+
+		// epoll event loop allocates its event array via sun.misc.Unsafe.
+		if (Epoll.isAvailable() && PlatformDependent.hasUnsafe()) { return EPOLL; }
+
+		if ("epoll".equalsIgnoreCase(transport)) {
+			logger.warn("Epoll transport is not available. NIO transport will be used instead.",
+					Epoll.isAvailable() ? new UnsupportedOperationException("sun.misc.Unsafe is not available.")
+							: Epoll.unavailabilityCause());
+		}
+
+		return NIO;
+	}
+}
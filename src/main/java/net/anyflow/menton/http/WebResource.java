@@ -0,0 +1,358 @@
+package net.anyflow.menton.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaderDateFormat;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMessage;
+import net.anyflow.menton.Settings;
+
+/**
+ * Web resource(file or classpath resource) with its validators. Header values
+ * are computed once on creation. Cached resources hold their content.
+ * <p>
+ * Precompressed siblings(<code>.br</code>, <code>.gz</code>) of a resource
+ * are its variants, which are served as they are to the clients accepting the
+ * encoding.
+ *
+ * @author anyflow
+ */
+final class WebResource {
+
+	/**
+	 * Content encodings of precompressed variants in preference order, with
+	 * their file extensions.
+	 */
+	private static final String[][] ENCODINGS = { { "br", ".br" }, { "gzip", ".gz" } };
+
+	private final String path;
+	private final File file;
+	private final URL url;
+	private final long length;
+	private final long lastModified;
+
+	private final String contentType;
+	private final String contentEncoding;
+	private final String etag;
+	private final String lastModifiedText;
+
+	private final Map<String, WebResource> variants = Maps.newHashMapWithExpectedSize(ENCODINGS.length);
+
+	private ByteBuf content;
+	private boolean released;
+	private volatile long checkedAt = System.nanoTime();
+
+	private WebResource(String path, File file, URL url, long length, long lastModified, String contentType,
+			String contentEncoding) {
+		this.path = path;
+		this.file = file;
+		this.url = url;
+		this.length = length;
+		this.lastModified = lastModified;
+
+		this.contentType = contentType;
+		this.contentEncoding = contentEncoding;
+		this.etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length)
+				+ (contentEncoding == null ? "" : "-" + contentEncoding) + "\"";
+		this.lastModifiedText = HttpHeaderDateFormat.get().format(new Date(lastModified));
+	}
+
+	/**
+	 * Looks up the classpath first and the web resource physical root path
+	 * next. Precompressed siblings which are not older than the resource are
+	 * added as variants.
+	 *
+	 * @param path
+	 * @return web resource. null if not exists.
+	 * @throws IOException
+	 */
+	static WebResource find(String path) throws IOException {
+		Map<String, String> mimes = Settings.SELF.webResourceExtensionToMimes();
+		String contentType = mimes == null ? null : mimes.get(Files.getFileExtension(path));
+
+		WebResource ret = find(path, contentType, null);
+		if (ret == null) { return null; }
+
+		for (String[] encoding : ENCODINGS) {
+			WebResource variant = find(path + encoding[1], contentType, encoding[0]);
+
+			if (variant == null || variant.lastModified < ret.lastModified) {
+				continue;
+			}
+
+			ret.variants.put(encoding[0], variant);
+		}
+
+		return ret;
+	}
+
+	private static WebResource find(String path, String contentType, String contentEncoding) throws IOException {
+		URL url = Thread.currentThread().getContextClassLoader().getResource(path);
+
+		File file = null;
+		if (url == null) {
+			file = new File(Settings.SELF.WebResourcePhysicalRootPath(), path);
+		}
+		else if ("file".equals(url.getProtocol())) {
+			try {
+				file = new File(url.toURI());
+			}
+			catch (URISyntaxException e) {
+				file = new File(url.getPath());
+			}
+		}
+
+		if (file != null) {
+			if (file.isFile() == false) { return null; }
+
+			return new WebResource(path, file, null, file.length(), file.lastModified(), contentType,
+					contentEncoding);
+		}
+
+		URLConnection connection = url.openConnection();
+
+		return new WebResource(path, null, url, connection.getContentLengthLong(), connection.getLastModified(),
+				contentType, contentEncoding);
+	}
+
+	/**
+	 * Adds in-memory variant of the resource.
+	 *
+	 * @param contentEncoding
+	 * @param content
+	 *            encoded content. The ownership is transferred to the variant.
+	 */
+	void addVariant(String contentEncoding, ByteBuf content) {
+		WebResource variant = new WebResource(path, null, null, content.readableBytes(), lastModified, contentType,
+				contentEncoding);
+
+		variant.content(content);
+		variants.put(contentEncoding, variant);
+	}
+
+	boolean hasVariant(String contentEncoding) {
+		return variants.containsKey(contentEncoding);
+	}
+
+	Collection<WebResource> variants() {
+		return variants.values();
+	}
+
+	/**
+	 * @param acceptEncoding
+	 *            Accept-Encoding header value of the request
+	 * @return the most preferred variant the client accepts. The resource
+	 *         itself if none.
+	 */
+	WebResource select(String acceptEncoding) {
+		if (acceptEncoding == null || variants.isEmpty()) { return this; }
+
+		for (String[] encoding : ENCODINGS) {
+			WebResource variant = variants.get(encoding[0]);
+
+			if (variant != null && accepts(acceptEncoding, encoding[0])) { return variant; }
+		}
+
+		return this;
+	}
+
+	private static boolean accepts(String acceptEncoding, String encoding) {
+		for (String token : acceptEncoding.split(",")) {
+			String[] params = token.split(";");
+
+			if (encoding.equalsIgnoreCase(params[0].trim()) == false) {
+				continue;
+			}
+
+			for (int i = 1; i < params.length; ++i) {
+				String param = params[i].trim();
+
+				if (param.startsWith("q=") == false) {
+					continue;
+				}
+
+				try {
+					return Double.parseDouble(param.substring(2)) > 0;
+				}
+				catch (NumberFormatException e) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	String path() {
+		return path;
+	}
+
+	/**
+	 * @return file on the file system. null if the resource is in jar or in
+	 *         memory.
+	 */
+	File file() {
+		return file;
+	}
+
+	/**
+	 * @return content length. negative if unknown.
+	 */
+	long length() {
+		return length;
+	}
+
+	long lastModified() {
+		return lastModified;
+	}
+
+	String contentType() {
+		return contentType;
+	}
+
+	String etag() {
+		return etag;
+	}
+
+	/**
+	 * @return whether the file on the file system(or one of the variant
+	 *         files) was changed since the resource was created. Resources in
+	 *         jar are never changed.
+	 */
+	boolean isStale() {
+		for (WebResource variant : variants.values()) {
+			if (variant.isStale()) { return true; }
+		}
+
+		if (file == null) { return false; }
+
+		return file.lastModified() != lastModified || file.length() != length;
+	}
+
+	/**
+	 * Same as {@link #isStale()}, but the file system is checked at most once
+	 * per interval. Within the interval since the last check(or the creation),
+	 * the resource is regarded as not stale.
+	 * 
+	 * @param interval
+	 *            minimum interval in milliseconds between the checks. 0 or
+	 *            negative checks on every call.
+	 */
+	boolean isStale(long interval) {
+		long now = System.nanoTime();
+
+		// racy on concurrent hits, which only results in an extra check.
+		if (interval > 0 && now - checkedAt < TimeUnit.MILLISECONDS.toNanos(interval)) { return false; }
+
+		checkedAt = now;
+		return isStale();
+	}
+
+	InputStream openStream() throws IOException {
+		return file != null ? new FileInputStream(file) : url.openStream();
+	}
+
+	/**
+	 * @param request
+	 * @return true if the request validators(If-None-Match or
+	 *         If-Modified-Since) match the resource.
+	 */
+	boolean isNotModified(HttpMessage request) {
+		String ifNoneMatch = request.headers().get(Names.IF_NONE_MATCH);
+
+		if (ifNoneMatch != null) { return "*".equals(ifNoneMatch.trim()) || ifNoneMatch.contains(etag); }
+
+		if (request.headers().contains(Names.IF_MODIFIED_SINCE) == false || lastModified <= 0) { return false; }
+
+		try {
+			Date since = HttpHeaders.getDateHeader(request, Names.IF_MODIFIED_SINCE);
+
+			return lastModified / 1000 <= since.getTime() / 1000;
+		}
+		catch (java.text.ParseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Sets validators, content type and content encoding into the response
+	 * headers.
+	 *
+	 * @param response
+	 * @param varied
+	 *            whether the resource has variants by Accept-Encoding
+	 */
+	void setHeaders(io.netty.handler.codec.http.HttpResponse response, boolean varied) {
+		if (contentType != null) {
+			response.headers().set(Names.CONTENT_TYPE, contentType);
+		}
+		if (contentEncoding != null) {
+			response.headers().set(Names.CONTENT_ENCODING, contentEncoding);
+		}
+		if (varied) {
+			response.headers().set(Names.VARY, Names.ACCEPT_ENCODING);
+		}
+
+		response.headers().set(Names.ETAG, etag);
+
+		if (lastModified > 0) {
+			response.headers().set(Names.LAST_MODIFIED, lastModifiedText);
+		}
+	}
+
+	boolean hasVariants() {
+		return variants.isEmpty() == false;
+	}
+
+	/**
+	 * @return retained duplicate of the cached content. null if the resource
+	 *         is not cached or already evicted.
+	 */
+	synchronized ByteBuf retainedContent() {
+		if (content == null || released) { return null; }
+
+		return content.duplicate().retain();
+	}
+
+	synchronized boolean hasContent() {
+		return content != null && released == false;
+	}
+
+	synchronized void content(ByteBuf content) {
+		this.content = content;
+	}
+
+	/**
+	 * Releases the cached contents of the resource and its variants. Contents
+	 * already handed over stay valid until they are written.
+	 */
+	void release() {
+		for (WebResource variant : variants.values()) {
+			variant.release();
+		}
+
+		synchronized (this) {
+			if (content == null || released) { return; }
+
+			released = true;
+			content.release();
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package net.anyflow.menton.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import net.anyflow.menton.Settings;
+import net.anyflow.menton.SettingsListener;
+import net.anyflow.menton.SettingsSnapshot;
+
+/**
+ * Size bounded cache of web resource contents held in pooled direct buffers.
+ * Entries of files are invalidated when the file is changed on the file
+ * system. The file is checked on a hit at most once per
+ * menton.httpServer.webResourceCache.revalidationInterval milliseconds(0
+ * checks on every hit), so a change is served after the interval at most.
+ * <p>
+ * The cache is configured by menton.httpServer.webResourceCache.maxSize(total
+ * bytes, 0 disables the cache) and
+ * menton.httpServer.webResourceCache.maxEntrySize settings. Larger resources
+ * are not cached but transferred directly.
+ * <p>
+ * Precompressed variants of cached resources are cached together. If a
+ * resource has no gzip variant, it is compressed once on caching unless
+ * menton.httpServer.webResourceCache.compress is false.
+ * <p>
+ * All entries are invalidated when the MIME map or the web resource root
+ * directory setting is changed. The size settings take effect on restart.
+ *
+ * @author anyflow
+ */
+public class WebResourceCache {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(WebResourceCache.class);
+
+	private static volatile WebResourceCache instance;
+
+	private final Cache<String, WebResource> cache;
+	private final long maxEntrySize;
+	private final boolean compress;
+	private final long revalidationInterval;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong weight = new AtomicLong();
+
+	/**
+	 * @return the cache configured by the settings on the first call.
+	 */
+	public static WebResourceCache instance() {
+		if (instance != null) { return instance; }
+
+		synchronized (WebResourceCache.class) {
+			if (instance == null) {
+				instance = new WebResourceCache(
+						Settings.SELF.getInt("menton.httpServer.webResourceCache.maxSize", 32 * 1024 * 1024),
+						Settings.SELF.getInt("menton.httpServer.webResourceCache.maxEntrySize", 1024 * 1024),
+						Settings.SELF.getBoolean("menton.httpServer.webResourceCache.compress", true),
+						Settings.SELF.getInt("menton.httpServer.webResourceCache.revalidationInterval", 1000));
+
+				Settings.SELF.register(new SettingsListener() {
+					@Override
+					public void settingsChanged(SettingsSnapshot previous, SettingsSnapshot current) {
+						if (previous.webResourceExtensionToMimes().equals(current.webResourceExtensionToMimes())
+								&& Objects.equal(previous.webResourcePhysicalRootPath(),
+										current.webResourcePhysicalRootPath())) { return; }
+
+						logger.info("Web resource settings changed. The cache is invalidated.");
+						instance.invalidateAll();
+					}
+				});
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * @param revalidationInterval
+	 *            minimum interval in milliseconds between file system checks
+	 *            of a cached resource.
+	 */
+	WebResourceCache(long maxSize, long maxEntrySize, boolean compress, long revalidationInterval) {
+		this.maxEntrySize = Math.min(maxSize, maxEntrySize);
+		this.compress = compress;
+		this.revalidationInterval = revalidationInterval;
+
+		// single segment, otherwise the weight limit is divided by segments. Reads are not locked anyway.
+		cache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(Math.max(maxSize, 0))
+				.weigher(new Weigher<String, WebResource>() {
+					@Override
+					public int weigh(String key, WebResource value) {
+						return (int) Math.min(WebResourceCache.weigh(value), Integer.MAX_VALUE);
+					}
+				}).removalListener(new RemovalListener<String, WebResource>() {
+					@Override
+					public void onRemoval(RemovalNotification<String, WebResource> notification) {
+						if (notification.getCause() == RemovalCause.SIZE) {
+							evictionCount.incrementAndGet();
+						}
+
+						weight.addAndGet(-weigh(notification.getValue()));
+						notification.getValue().release();
+					}
+				}).build();
+	}
+
+	/**
+	 * @param path
+	 *            web resource request path
+	 * @return web resource. Its content is cached if the resource size is
+	 *         within the limit. null if the resource does not exist.
+	 * @throws IOException
+	 */
+	WebResource get(String path) throws IOException {
+		if (maxEntrySize <= 0) { return WebResource.find(path); }
+
+		WebResource ret = cache.getIfPresent(path);
+
+		if (ret != null) {
+			if (ret.isStale(revalidationInterval) == false) {
+				hitCount.incrementAndGet();
+				return ret;
+			}
+
+			cache.invalidate(path);
+		}
+
+		missCount.incrementAndGet();
+
+		ret = WebResource.find(path);
+		if (ret == null || cacheable(ret) == false) { return ret; }
+
+		ret.content(load(ret));
+
+		for (WebResource variant : ret.variants()) {
+			if (cacheable(variant) == false) {
+				continue;
+			}
+
+			variant.content(load(variant));
+		}
+
+		if (compress && ret.hasVariant("gzip") == false) {
+			compress(ret);
+		}
+
+		weight.addAndGet(weigh(ret));
+		cache.put(path, ret);
+
+		logger.debug("Web resource cached : {} ({} bytes)", path, weigh(ret));
+
+		return ret;
+	}
+
+	private boolean cacheable(WebResource resource) {
+		return resource.length() >= 0 && resource.length() <= maxEntrySize;
+	}
+
+	private static ByteBuf load(WebResource resource) throws IOException {
+		ByteBuf ret = PooledByteBufAllocator.DEFAULT.directBuffer((int) resource.length());
+
+		try (InputStream is = resource.openStream()) {
+			while (ret.isWritable() && ret.writeBytes(is, ret.writableBytes()) != -1) {
+				continue;
+			}
+		}
+		catch (IOException e) {
+			ret.release();
+			throw e;
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Compresses the resource content once and keeps it as gzip variant if it
+	 * gets smaller, i.e. already compressed formats are not kept.
+	 */
+	private static void compress(WebResource resource) throws IOException {
+		ByteBuf content = resource.retainedContent();
+		if (content == null) { return; }
+
+		ByteBuf compressed = PooledByteBufAllocator.DEFAULT.directBuffer(content.readableBytes());
+
+		try (GZIPOutputStream os = new GZIPOutputStream(new ByteBufOutputStream(compressed)) {
+			{
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		}) {
+			content.readBytes(os, content.readableBytes());
+		}
+		catch (IOException e) {
+			compressed.release();
+			throw e;
+		}
+		finally {
+			content.release();
+		}
+
+		if (compressed.readableBytes() >= resource.length()) {
+			compressed.release();
+			return;
+		}
+
+		resource.addVariant("gzip", compressed);
+	}
+
+	/**
+	 * @return total bytes of the cached contents of the resource and its
+	 *         variants.
+	 */
+	private static long weigh(WebResource resource) {
+		long ret = resource.length();
+
+		for (WebResource variant : resource.variants()) {
+			if (variant.hasContent()) {
+				ret += variant.length();
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Invalidates the cached resource.
+	 *
+	 * @param path
+	 *            web resource request path
+	 */
+	public void invalidate(String path) {
+		cache.invalidate(path);
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	public long hitCount() {
+		return hitCount.get();
+	}
+
+	public long missCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return count of entries evicted by the size limit.
+	 */
+	public long evictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return total bytes of the cached contents.
+	 */
+	public long weight() {
+		return weight.get();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+}
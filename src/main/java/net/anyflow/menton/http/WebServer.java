@@ -1,6 +1,10 @@
 package net.anyflow.menton.http;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,9 +12,9 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Lists;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import net.anyflow.menton.Settings;
 import net.anyflow.menton.general.TaskCompletionInformer;
@@ -22,17 +26,39 @@ import net.anyflow.menton.general.TaskCompletionListener;
 public class WebServer implements TaskCompletionInformer {
 
 	private static final Logger logger = LoggerFactory.getLogger(WebServer.class);
+	private static final int DEFAULT_LOW_WATER_MARK = 32 * 1024;
+
+	private final Transport transport;
 	private final EventLoopGroup bossGroup;
 	private final EventLoopGroup workerGroup;
+	private final ThreadPoolExecutor businessExecutor;
+	private final AccessLog accessLog;
 	private final List<TaskCompletionListener> taskCompletionListeners;
 
 	public WebServer() {
 		taskCompletionListeners = Lists.newArrayList();
 
-		bossGroup = new NioEventLoopGroup(Settings.SELF.getInt("menton.system.bossThreadCount", 0),
+		transport = Transport.select();
+		logger.info("{} transport is selected.", transport);
+
+		bossGroup = transport.newEventLoopGroup(Settings.SELF.getInt("menton.system.bossThreadCount", 0),
 				new DefaultThreadFactory("server/boss"));
-		workerGroup = new NioEventLoopGroup(Settings.SELF.getInt("menton.system.workerThreadCount", 0),
+		workerGroup = transport.newEventLoopGroup(Settings.SELF.getInt("menton.system.workerThreadCount", 0),
 				new DefaultThreadFactory("server/worker"));
+
+		int businessThreadCount = Settings.SELF.getInt("menton.system.businessThreadCount", 0);
+		if (businessThreadCount <= 0) {
+			businessThreadCount = Runtime.getRuntime().availableProcessors() * 2;
+		}
+
+		int maxPendingRequests = Settings.SELF.getInt("menton.httpServer.maxPendingRequests", 1024);
+
+		// Threads are created on demand : no cost unless WORKER execution handlers exist.
+		businessExecutor = new ThreadPoolExecutor(businessThreadCount, businessThreadCount, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(maxPendingRequests > 0 ? maxPendingRequests : Integer.MAX_VALUE),
+				new DefaultThreadFactory("server/business"));
+
+		accessLog = AccessLog.fromSettings();
 	}
 
 	public EventLoopGroup bossGroup() {
@@ -43,6 +69,13 @@ public class WebServer implements TaskCompletionInformer {
 		return workerGroup;
 	}
 
+	/**
+	 * @return executor of {@link HttpRequestHandler.Execution#WORKER} handlers
+	 */
+	public ExecutorService businessExecutor() {
+		return businessExecutor;
+	}
+
 	/**
 	 * @param requestHandlerPakcageRoot
 	 *            root package prefix of request handlers.
@@ -64,21 +97,13 @@ public class WebServer implements TaskCompletionInformer {
 		HttpRequestHandler.setRequestHandlerPakcageRoot(requestHandlerPakcageRoot);
 		try {
 			if (Settings.SELF.httpPort() != null) {
-				ServerBootstrap bootstrap = new ServerBootstrap();
-
-				bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
-						.childHandler(new WebServerChannelInitializer(false, websocketFrameHandlerClass));
-
-				bootstrap.bind(Settings.SELF.httpPort()).sync();
+				bind(Settings.SELF.httpPort(), new WebServerChannelInitializer(false, websocketFrameHandlerClass,
+						businessExecutor, accessLog));
 			}
 
 			if (Settings.SELF.httpsPort() != null) {
-				ServerBootstrap bootstrap = new ServerBootstrap();
-
-				bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
-						.childHandler(new WebServerChannelInitializer(true, websocketFrameHandlerClass));
-
-				bootstrap.bind(Settings.SELF.httpsPort()).sync();
+				bind(Settings.SELF.httpsPort(), new WebServerChannelInitializer(true, websocketFrameHandlerClass,
+						businessExecutor, accessLog));
 			}
 
 			logger.info("Menton HTTP server started.");
@@ -89,17 +114,82 @@ public class WebServer implements TaskCompletionInformer {
 		}
 	}
 
+	private void bind(int port, WebServerChannelInitializer channelInitializer) throws InterruptedException {
+		ServerBootstrap bootstrap = new ServerBootstrap();
+
+		bootstrap.group(bossGroup, workerGroup).channel(transport.serverChannelClass()).childHandler(channelInitializer);
+
+		if (channelInitializer.useSsl) {
+			// the certificate files are read on the boss group, not on the
+			// worker event loops.
+			channelInitializer.sslContext.scheduleReload(bossGroup);
+		}
+
+		bootstrap.option(ChannelOption.SO_BACKLOG, Settings.SELF.getInt("menton.httpServer.backlog", 1024));
+		bootstrap.childOption(ChannelOption.TCP_NODELAY, Settings.SELF.getBoolean("menton.httpServer.tcpNoDelay", true));
+
+		Integer highWaterMark = Settings.tryParse(Settings.SELF.getProperty("menton.httpServer.writeBufferHighWaterMark"));
+		Integer lowWaterMark = Settings.tryParse(Settings.SELF.getProperty("menton.httpServer.writeBufferLowWaterMark"));
+
+		// Netty validates low <= high on each setting, so the lowering one goes first.
+		if (lowWaterMark != null && (highWaterMark == null || highWaterMark < DEFAULT_LOW_WATER_MARK)) {
+			bootstrap.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, lowWaterMark);
+			lowWaterMark = null;
+		}
+		if (highWaterMark != null) {
+			bootstrap.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, highWaterMark);
+		}
+		if (lowWaterMark != null) {
+			bootstrap.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, lowWaterMark);
+		}
+
+		int bindCount = 1;
+
+		if (transport == Transport.EPOLL) {
+			int tcpFastOpen = Settings.SELF.getInt("menton.httpServer.tcpFastOpen", 0);
+			if (tcpFastOpen > 0) {
+				bootstrap.option(EpollChannelOption.TCP_FASTOPEN, tcpFastOpen);
+			}
+
+			// SO_REUSEPORT lets each boss event loop have its own acceptor socket on the same port.
+			if (Settings.SELF.getBoolean("menton.httpServer.reusePort", false)) {
+				bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+				bindCount = Math.max(1, Settings.SELF.getInt("menton.system.bossThreadCount", 1));
+			}
+		}
+
+		for (int i = 0; i < bindCount; ++i) {
+			bootstrap.bind(port).sync();
+		}
+	}
+
 	public void shutdown() {
 		if (bossGroup != null) {
 			bossGroup.shutdownGracefully().awaitUninterruptibly();
 			logger.debug("Boss event loop group shutdowned.");
 		}
 
+		if (businessExecutor != null) {
+			businessExecutor.shutdown();
+			try {
+				businessExecutor.awaitTermination(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				logger.error(e.getMessage(), e);
+			}
+			logger.debug("Business executor shutdowned.");
+		}
+
 		if (workerGroup != null) {
 			workerGroup.shutdownGracefully().awaitUninterruptibly();
 			logger.debug("Worker event loop group shutdowned.");
 		}
 
+		if (accessLog != null) {
+			accessLog.close();
+			logger.debug("Access log closed. {} record(s) dropped.", accessLog.dropped());
+		}
+
 		logger.debug("Menton HTTP server stopped.");
 		inform();
 	}
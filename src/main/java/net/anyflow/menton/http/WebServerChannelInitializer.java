@@ -1,56 +1,316 @@
 package net.anyflow.menton.http;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AsciiString;
 import net.anyflow.menton.Settings;
 
+/**
+ * Initializes the server connections. HTTP/2 is served along with HTTP/1.1 :
+ * <ul>
+ * <li>HTTPS port : h2 if the client selects it by ALPN(h2 in
+ * menton.ssl.alpnProtocols), otherwise HTTP/1.1.</li>
+ * <li>HTTP port : h2c by prior knowledge or <code>Upgrade: h2c</code> if
+ * menton.httpServer.h2c is true, otherwise HTTP/1.1.</li>
+ * </ul>
+ * Each HTTP/2 stream is served on a child channel, whose frames are converted
+ * to HTTP/1.1 objects and passed to the same handlers as HTTP/1.1 connections
+ * up to {@link HttpRequestRouter}.
+ *
+ * @author anyflow
+ */
 class WebServerChannelInitializer extends ChannelInitializer<SocketChannel> {
 
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(WebServerChannelInitializer.class);
 
+	private static final Http2StreamFrameToHttpObjectCodec HTTP2_STREAM_CODEC = new Http2StreamFrameToHttpObjectCodec(
+			true);
+
 	final boolean useSsl;
+	final ReloadableSslContext sslContext;
 	final Class<? extends WebsocketFrameHandler> websocketFrameHandlerClass;
+	final ExecutorService businessExecutor;
+	final AccessLog accessLog;
+	final int idleTimeout;
+	final int maxRequestsPerConnection;
+	final int maxConsolidatedFlushes;
+	final boolean consolidateFlushesWhenNotReading;
+	final boolean h2c;
+	final int maxConcurrentStreams;
+
+	private final ChannelInitializer<Channel> http2StreamInitializer = new ChannelInitializer<Channel>() {
+		@Override
+		protected void initChannel(Channel ch) throws Exception {
+			ch.pipeline().addLast(Http2StreamFrameToHttpObjectCodec.class.getName(), HTTP2_STREAM_CODEC);
+			addHttpHandlers(ch.pipeline(), true);
+		}
+	};
 
+	/**
+	 * @param accessLog
+	 *            null if the access log is disabled.
+	 * @throws SSLException
+	 *             if useSsl is true and the certificate can not be loaded.
+	 */
 	public WebServerChannelInitializer(boolean useSsl,
-			Class<? extends WebsocketFrameHandler> websocketFrameHandlerClass) {
+			Class<? extends WebsocketFrameHandler> websocketFrameHandlerClass, ExecutorService businessExecutor,
+			AccessLog accessLog) throws SSLException {
 		this.useSsl = useSsl;
+		this.sslContext = useSsl
+				? new ReloadableSslContext(Settings.SELF.certChainFile(), Settings.SELF.privateKeyFile(),
+						SslOptions.fromSettings(), Settings.SELF.getInt("menton.ssl.reloadCheckInterval", 5000))
+				: null;
 		this.websocketFrameHandlerClass = websocketFrameHandlerClass;
+		this.businessExecutor = businessExecutor;
+		this.accessLog = accessLog;
+		this.idleTimeout = Settings.SELF.getInt("menton.httpServer.idleTimeout", 75);
+		this.maxRequestsPerConnection = Settings.SELF.getInt("menton.httpServer.maxRequestsPerConnection", 0);
+		this.maxConsolidatedFlushes = Settings.SELF.getInt("menton.httpServer.flushConsolidation.maxFlushes", 256);
+		this.consolidateFlushesWhenNotReading = Settings.SELF
+				.getBoolean("menton.httpServer.flushConsolidation.whenNotReading", true);
+		this.h2c = Settings.SELF.getBoolean("menton.httpServer.h2c", true);
+		this.maxConcurrentStreams = Settings.SELF.getInt("menton.httpServer.http2.maxConcurrentStreams", 100);
 	}
 
 	@Override
 	protected void initChannel(SocketChannel ch) throws Exception {
-		if ("true".equalsIgnoreCase(Settings.SELF.getProperty("menton.logging.writelogOfNettyLogger"))) {
+		if (maxConsolidatedFlushes > 0) {
+			ch.pipeline().addLast(FlushConsolidator.class.getName(),
+					new FlushConsolidator(maxConsolidatedFlushes, consolidateFlushesWhenNotReading));
+		}
+
+		if (Settings.SELF.snapshot().writelogOfNettyLogger()) {
 			ch.pipeline().addLast("log", new LoggingHandler("menton/server", Settings.SELF.logLevel()));
 		}
 
+		SslContext context = useSsl ? sslContext.get() : null;
+
 		if (useSsl) {
-			SslContext sslCtx = SslContextBuilder
-					.forServer(Settings.SELF.certChainFile(), Settings.SELF.privateKeyFile()).build();
+			ch.pipeline().addLast(context.newHandler(ch.alloc()));
+		}
 
-			logger.debug("SSL Provider : {}", SslContext.defaultServerProvider());
+		if (idleTimeout > 0) {
+			ch.pipeline().addLast(IdleStateHandler.class.getName(),
+					new IdleStateHandler(0, 0, idleTimeout, TimeUnit.SECONDS));
+		}
 
-			ch.pipeline().addLast(sslCtx.newHandler(ch.alloc()));
+		if (useSsl && context.applicationProtocolNegotiator().protocols().contains(ApplicationProtocolNames.HTTP_2)) {
+			ch.pipeline().addLast(ApplicationProtocolNegotiationHandler.class.getName(), new ProtocolNegotiator());
+		}
+		else if (useSsl == false && h2c) {
+			addH2cHandlers(ch.pipeline());
+		}
+		else {
+			addHttp1Handlers(ch.pipeline());
 		}
+	}
 
-		ch.pipeline().addLast(HttpServerCodec.class.getName(), new HttpServerCodec());
-		ch.pipeline().addLast(HttpObjectAggregator.class.getName(), new HttpObjectAggregator(1048576));
-		ch.pipeline().addLast(HttpContentCompressor.class.getName(), new HttpContentCompressor());
-		ch.pipeline().addLast(HttpRequestRouter.class.getName(), new HttpRequestRouter());
+	private void addHttp1Handlers(ChannelPipeline pipeline) throws Exception {
+		pipeline.addLast(HttpServerCodec.class.getName(), new HttpServerCodec());
+		addHttpHandlers(pipeline, false);
+	}
 
-		if (websocketFrameHandlerClass != null) {
+	/**
+	 * Adds the handlers following the HTTP/1.1 codec.
+	 *
+	 * @param http2Stream
+	 *            whether the pipeline is of an HTTP/2 stream. A stream carries
+	 *            a request only and the connection is managed by the HTTP/2
+	 *            codec, so neither ResponseSequencer nor WebSocket is added.
+	 */
+	private void addHttpHandlers(ChannelPipeline pipeline, boolean http2Stream) throws Exception {
+		if (accessLog != null) {
+			pipeline.addLast(AccessLogHandler.class.getName(), new AccessLogHandler(accessLog));
+		}
+
+		pipeline.addLast(ChunkedWriteHandler.class.getName(), new ChunkedWriteHandler());
+		pipeline.addLast(HttpObjectAggregator.class.getName(),
+				new RequestAggregator(Settings.SELF.snapshot().maxContentLength()));
+		pipeline.addLast(HttpContentCompressor.class.getName(), new ContentCompressor());
+
+		if (http2Stream == false) {
+			pipeline.addLast(ResponseSequencer.class.getName(), new ResponseSequencer(maxRequestsPerConnection));
+		}
+
+		pipeline.addLast(HttpRequestRouter.class.getName(), new HttpRequestRouter(businessExecutor));
+
+		if (http2Stream == false && websocketFrameHandlerClass != null) {
 			WebsocketFrameHandler wsfh = websocketFrameHandlerClass.newInstance();
 
-			ch.pipeline().addLast(WebSocketServerProtocolHandler.class.getName(), new WebSocketServerProtocolHandler(
+			pipeline.addLast(WebSocketServerProtocolHandler.class.getName(), new WebSocketServerProtocolHandler(
 					wsfh.websocketPath(), wsfh.subprotocols(), wsfh.allowExtensions(), wsfh.maxFrameSize()));
 
-			ch.pipeline().addLast(wsfh);
+			pipeline.addLast(wsfh);
+		}
+	}
+
+	/**
+	 * Adds the handlers of h2c, which switch the connection to HTTP/2 on the
+	 * prior knowledge preface or <code>Upgrade: h2c</code> request. Otherwise
+	 * HTTP/1.1 handlers are added on the first request.
+	 */
+	private void addH2cHandlers(ChannelPipeline pipeline) {
+		final Http2FrameCodec codec = newHttp2FrameCodec();
+
+		HttpServerCodec sourceCodec = new HttpServerCodec();
+		HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec,
+				new HttpServerUpgradeHandler.UpgradeCodecFactory() {
+					@Override
+					public HttpServerUpgradeHandler.UpgradeCodec newUpgradeCodec(CharSequence protocol) {
+						if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol) == false) { return null; }
+
+						return new Http2ServerUpgradeCodec(codec, new Http2MultiplexHandler(http2StreamInitializer),
+								new Http2IdleHandler(codec));
+					}
+				}, Settings.SELF.snapshot().maxContentLength());
+
+		ChannelInitializer<Channel> priorKnowledgeHandler = new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				// in place of the initializer. The multiplexer requires the codec in the pipeline when added.
+				ch.pipeline().addAfter(ch.pipeline().context(this).name(), Http2FrameCodec.class.getName(), codec);
+				ch.pipeline().addAfter(Http2FrameCodec.class.getName(), Http2MultiplexHandler.class.getName(),
+						new Http2MultiplexHandler(http2StreamInitializer));
+				ch.pipeline().addAfter(Http2MultiplexHandler.class.getName(), Http2IdleHandler.class.getName(),
+						new Http2IdleHandler(codec));
+			}
+		};
+
+		pipeline.addLast(CleartextHttp2ServerUpgradeHandler.class.getName(),
+				new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, priorKnowledgeHandler));
+		pipeline.addLast(Http1Installer.class.getName(), new Http1Installer());
+	}
+
+	private void addHttp2Handlers(ChannelPipeline pipeline) {
+		Http2FrameCodec codec = newHttp2FrameCodec();
+
+		pipeline.addLast(Http2FrameCodec.class.getName(), codec);
+		pipeline.addLast(Http2MultiplexHandler.class.getName(), new Http2MultiplexHandler(http2StreamInitializer));
+		pipeline.addLast(Http2IdleHandler.class.getName(), new Http2IdleHandler(codec));
+	}
+
+	private Http2FrameCodec newHttp2FrameCodec() {
+		Http2Settings settings = Http2Settings.defaultSettings();
+		if (maxConcurrentStreams > 0) {
+			settings.maxConcurrentStreams(maxConcurrentStreams);
+		}
+
+		return Http2FrameCodecBuilder.forServer().initialSettings(settings).build();
+	}
+
+	/**
+	 * Adds the handlers of the protocol selected by ALPN.
+	 */
+	private class ProtocolNegotiator extends ApplicationProtocolNegotiationHandler {
+
+		ProtocolNegotiator() {
+			super(ApplicationProtocolNames.HTTP_1_1);
+		}
+
+		@Override
+		protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
+			logger.debug("{} is selected : {}", protocol, ctx.channel());
+
+			if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+				addHttp2Handlers(ctx.pipeline());
+			}
+			else if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+				addHttp1Handlers(ctx.pipeline());
+			}
+			else {
+				throw new IllegalStateException("Unknown protocol : " + protocol);
+			}
+		}
+	}
+
+	/**
+	 * Replaces itself with HTTP/1.1 handlers on the first request of the h2c
+	 * port, unless the connection is switched to HTTP/2.
+	 */
+	private class Http1Installer extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			if (msg instanceof HttpMessage == false) {
+				ctx.fireChannelRead(msg);
+				return;
+			}
+
+			addHttpHandlers(ctx.pipeline(), false);
+			ctx.pipeline().remove(this);
+
+			ctx.fireChannelRead(msg);
+		}
+
+		@Override
+		public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+			if (evt instanceof CleartextHttp2ServerUpgradeHandler.PriorKnowledgeUpgradeEvent
+					|| evt instanceof HttpServerUpgradeHandler.UpgradeEvent) {
+				ctx.pipeline().remove(this);
+			}
+			else if (evt instanceof IdleStateEvent) {
+				logger.debug("Idle connection is closed : {}", ctx.channel());
+				ctx.close();
+				return;
+			}
+
+			ctx.fireUserEventTriggered(evt);
+		}
+	}
+
+	/**
+	 * Closes HTTP/2 connections idle({@link IdleStateEvent}) without active
+	 * streams. The codec sends GOAWAY before closing.
+	 */
+	private static class Http2IdleHandler extends ChannelInboundHandlerAdapter {
+
+		private final Http2FrameCodec codec;
+
+		Http2IdleHandler(Http2FrameCodec codec) {
+			this.codec = codec;
+		}
+
+		@Override
+		public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+			if (evt instanceof IdleStateEvent) {
+				if (codec.connection().numActiveStreams() == 0) {
+					logger.debug("Idle connection is closed : {}", ctx.channel());
+					ctx.close();
+				}
+				return;
+			}
+
+			ctx.fireUserEventTriggered(evt);
 		}
 	}
-}
\ No newline at end of file
+}
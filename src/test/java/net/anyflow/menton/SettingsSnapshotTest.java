@@ -0,0 +1,53 @@
+package net.anyflow.menton;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.anyflow.menton.http.HttpRequestHandler;
+
+/**
+ * @author anyflow
+ */
+public class SettingsSnapshotTest {
+
+	private String contextRoot;
+	private String execution;
+
+	@Before
+	public void setUp() {
+		contextRoot = Settings.SELF.getProperty("menton.httpServer.contextRoot", "/");
+		execution = Settings.SELF.getProperty("menton.httpServer.execution", "EVENT_LOOP");
+	}
+
+	@After
+	public void tearDown() {
+		Settings.SELF.setProperty("menton.httpServer.contextRoot", contextRoot);
+		Settings.SELF.setProperty("menton.httpServer.execution", execution);
+	}
+
+	@Test
+	public void testSetPropertyPublishesSnapshot() throws Exception {
+		SettingsSnapshot before = Settings.SELF.snapshot();
+
+		Settings.SELF.setProperty("menton.httpServer.contextRoot", "/api");
+
+		assertThat(Settings.SELF.snapshot(), is(not(sameInstance(before))));
+		assertThat(Settings.SELF.snapshot().httpContextRoot(), is("/api/"));
+		assertThat(Settings.SELF.httpContextRoot(), is("/api/"));
+	}
+
+	@Test
+	public void testExecutionParsed() throws Exception {
+		Settings.SELF.setProperty("menton.httpServer.execution", "worker");
+		assertThat(Settings.SELF.snapshot().execution(), is(HttpRequestHandler.Execution.WORKER));
+
+		Settings.SELF.setProperty("menton.httpServer.execution", "unknown");
+		assertThat(Settings.SELF.snapshot().execution(), is(HttpRequestHandler.Execution.EVENT_LOOP));
+	}
+}
@@ -0,0 +1,123 @@
+package net.anyflow.menton;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * @author anyflow
+ */
+public class SettingsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String asyncTimeout;
+	private String writeHttpRequest;
+	private SettingsListener listener;
+
+	@Before
+	public void setUp() {
+		asyncTimeout = Settings.SELF.getProperty("menton.httpServer.asyncTimeout", "30000");
+		writeHttpRequest = Settings.SELF.getProperty("menton.logging.writeHttpRequest", "false");
+	}
+
+	@After
+	public void tearDown() {
+		if (listener != null) {
+			Settings.SELF.deregister(listener);
+		}
+
+		Settings.SELF.setProperty("menton.httpServer.asyncTimeout", asyncTimeout);
+		Settings.SELF.setProperty("menton.logging.writeHttpRequest", writeHttpRequest);
+	}
+
+	@Test
+	public void testReloadAppliedAndInformed() throws Exception {
+		final AtomicReference<SettingsSnapshot> informed = new AtomicReference<SettingsSnapshot>();
+
+		listener = new SettingsListener() {
+			@Override
+			public void settingsChanged(SettingsSnapshot previous, SettingsSnapshot current) {
+				informed.set(current);
+			}
+		};
+		Settings.SELF.register(listener);
+
+		Properties properties = new Properties();
+		properties.setProperty("menton.httpServer.asyncTimeout", "1234");
+		properties.setProperty("menton.logging.writeHttpRequest", "true");
+
+		Settings.SELF.reload(properties);
+
+		assertThat(Settings.SELF.snapshot().asyncTimeout(), is(1234));
+		assertThat(Settings.SELF.snapshot().writeHttpRequest(), is(true));
+		assertThat(informed.get() == Settings.SELF.snapshot(), is(true));
+	}
+
+	@Test
+	public void testMalformedReloadRejected() throws Exception {
+		Settings.SELF.setProperty("menton.httpServer.asyncTimeout", "1000");
+		SettingsSnapshot before = Settings.SELF.snapshot();
+
+		Properties properties = new Properties();
+		properties.setProperty("menton.logging.writeHttpRequest", "true");
+		properties.setProperty("menton.httpServer.asyncTimeout", "1s");
+
+		try {
+			Settings.SELF.reload(properties);
+			fail("Malformed settings should be rejected.");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		assertThat(Settings.SELF.snapshot() == before, is(true));
+		assertThat(Settings.SELF.getProperty("menton.httpServer.asyncTimeout"), is("1000"));
+	}
+
+	@Test
+	public void testWatcherReloadsChangedFile() throws Exception {
+		File file = folder.newFile("application.properties");
+		Files.write("menton.httpServer.asyncTimeout=1000\n", file, Charsets.ISO_8859_1);
+
+		final CountDownLatch reloaded = new CountDownLatch(1);
+
+		listener = new SettingsListener() {
+			@Override
+			public void settingsChanged(SettingsSnapshot previous, SettingsSnapshot current) {
+				if (current.asyncTimeout() == 2000) {
+					reloaded.countDown();
+				}
+			}
+		};
+		Settings.SELF.register(listener);
+
+		SettingsWatcher watcher = new SettingsWatcher(file);
+		watcher.start();
+
+		try {
+			Files.write("menton.httpServer.asyncTimeout=2000\n", file, Charsets.ISO_8859_1);
+
+			assertThat(reloaded.await(10, TimeUnit.SECONDS), is(true));
+		}
+		finally {
+			watcher.stop();
+		}
+	}
+}
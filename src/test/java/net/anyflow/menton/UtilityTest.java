@@ -58,7 +58,7 @@ public class UtilityTest {
 		String uriString = "http://10.0.0.1/getporttest";
 		IHttpClient client = new HttpClient(uriString);
 
-		assertThat(client.httpRequest().uri().getPort(), is(80));
+		assertThat(client.httpRequest().normalizedUri().getPort(), is(80));
 	}
 
 	@Test
@@ -67,7 +67,7 @@ public class UtilityTest {
 		String uriString = "http://10.0.0.1/getporttest";
 		IHttpClient client = new HttpClient(uriString);
 
-		assertThat(client.httpRequest().uri().getPort(), is(80));
+		assertThat(client.httpRequest().normalizedUri().getPort(), is(80));
 	}
 
 	@Test
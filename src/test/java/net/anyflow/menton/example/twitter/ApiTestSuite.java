@@ -9,7 +9,7 @@ import org.junit.runners.Suite.SuiteClasses;
 import junit.framework.TestSuite;
 
 @RunWith(Suite.class)
-@SuiteClasses({ TweetTest.class, ListTest.class })
+@SuiteClasses({ TweetTest.class, ListTest.class, RelayTest.class })
 public class ApiTestSuite extends TestSuite {
 
 	private static net.anyflow.menton.example.twitter.Entrypoint server = null;
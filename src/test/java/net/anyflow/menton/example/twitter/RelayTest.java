@@ -0,0 +1,48 @@
+package net.anyflow.menton.example.twitter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.URISyntaxException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jayway.jsonpath.JsonPath;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.CharsetUtil;
+import net.anyflow.menton.Settings;
+import net.anyflow.menton.http.HttpClient;
+import net.anyflow.menton.http.HttpResponse;
+import net.anyflow.menton.http.IHttpClient;
+
+public class RelayTest extends ApiTestCase {
+
+	@BeforeClass
+	public static void setup() throws UnsupportedOperationException, URISyntaxException {
+		new TweetTest().test1_PUT();
+	}
+
+	final String address = "https://localhost:" + Settings.SELF.httpsPort() + "/twitter/relay/";
+
+	@Test
+	public void test() throws UnsupportedOperationException, URISyntaxException {
+		IHttpClient client = new HttpClient(address + TweetTest.tweetId, true);
+
+		HttpResponse response = client.get();
+
+		assertThat(response.getStatus(), is(HttpResponseStatus.OK));
+
+		String content = response.content().toString(CharsetUtil.UTF_8);
+
+		assertThat(JsonPath.read(content, "$.id").toString(), is(TweetTest.tweetId));
+	}
+
+	@Test
+	public void testNotFound() throws UnsupportedOperationException, URISyntaxException {
+		IHttpClient client = new HttpClient(address + "nothing", true);
+
+		assertThat(client.get().getStatus(), is(HttpResponseStatus.FORBIDDEN));
+	}
+}
@@ -0,0 +1,122 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import net.anyflow.menton.Settings;
+
+/**
+ * @author anyflow
+ */
+public class AccessLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String sampleRate;
+	private String bodyLimit;
+
+	private File file;
+	private AccessLog accessLog;
+
+	@Before
+	public void setUp() throws Exception {
+		sampleRate = Settings.SELF.getProperty("menton.logging.accessLog.sampleRate", "1.0");
+		bodyLimit = Settings.SELF.getProperty("menton.logging.accessLog.bodyLimit", "0");
+
+		file = new File(folder.getRoot(), "access.log");
+		accessLog = new AccessLog(file, 16);
+	}
+
+	@After
+	public void tearDown() {
+		accessLog.close();
+
+		Settings.SELF.setProperty("menton.logging.accessLog.sampleRate", sampleRate);
+		Settings.SELF.setProperty("menton.logging.accessLog.bodyLimit", bodyLimit);
+	}
+
+	@Test
+	public void testResponsesLogged() throws Exception {
+		Settings.SELF.setProperty("menton.logging.accessLog.sampleRate", "1.0");
+		Settings.SELF.setProperty("menton.logging.accessLog.bodyLimit", "5");
+
+		EmbeddedChannel channel = new EmbeddedChannel(new AccessLogHandler(accessLog));
+
+		channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/tweet",
+				Unpooled.copiedBuffer("hello world", CharsetUtil.UTF_8)));
+		channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/tweet/1"));
+
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CREATED,
+				Unpooled.copiedBuffer("1234", CharsetUtil.UTF_8)));
+		channel.writeOutbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+		channel.writeOutbound(new DefaultLastHttpContent(Unpooled.copiedBuffer("123456", CharsetUtil.UTF_8)));
+
+		release(channel);
+
+		accessLog.close();
+		List<String> lines = Files.readLines(file, Charsets.UTF_8);
+
+		assertThat(lines.size(), is(2));
+		assertThat(lines.get(0), containsString("\"POST /tweet\" 201 4 "));
+		assertThat(lines.get(0), containsString("\"hello\""));
+		assertThat(lines.get(1), containsString("\"GET /tweet/1\" 200 6 "));
+	}
+
+	@Test
+	public void testNotSampledRequestsSkipped() throws Exception {
+		Settings.SELF.setProperty("menton.logging.accessLog.sampleRate", "0");
+
+		EmbeddedChannel channel = new EmbeddedChannel(new AccessLogHandler(accessLog));
+
+		channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/tweet/1"));
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+
+		release(channel);
+
+		accessLog.close();
+		assertThat(Files.readLines(file, Charsets.UTF_8).isEmpty(), is(true));
+	}
+
+	@Test
+	public void testRecordsDroppedWhenClosed() throws Exception {
+		accessLog.close();
+
+		assertThat(accessLog.log(HttpMethod.GET, "/", 200, 0, 0, null, null), is(false));
+	}
+
+	private static void release(EmbeddedChannel channel) {
+		Object msg;
+		while ((msg = channel.readInbound()) != null) {
+			ReferenceCountUtil.release(msg);
+		}
+		while ((msg = channel.readOutbound()) != null) {
+			ReferenceCountUtil.release(msg);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * @author anyflow
+ */
+public class ContentCompressorTest {
+
+	private CompressionPolicy policy;
+	private EmbeddedChannel channel;
+
+	@Before
+	public void setUp() {
+		policy = new CompressionPolicy(true, 100, 6, "text/, application/json");
+		channel = new EmbeddedChannel(new ContentCompressor(policy));
+	}
+
+	@Test
+	public void testCompressed() throws Exception {
+		HttpResponse response = exchange("application/json; charset=UTF-8", 1000);
+
+		assertThat(response.headers().get(Names.CONTENT_ENCODING), is("gzip"));
+		assertThat(policy.compressedCount(), is(1L));
+		assertThat(policy.bytesIn(), is(1000L));
+		assertThat(policy.bytesSaved() > 0, is(true));
+	}
+
+	@Test
+	public void testSmallResponseSkipped() throws Exception {
+		HttpResponse response = exchange("application/json", 99);
+
+		assertThat(response.headers().get(Names.CONTENT_ENCODING), is(nullValue()));
+		assertThat(policy.skippedCount(), is(1L));
+	}
+
+	@Test
+	public void testContentTypeNotAllowed() throws Exception {
+		assertThat(exchange("image/png", 1000).headers().get(Names.CONTENT_ENCODING), is(nullValue()));
+		assertThat(exchange("text/html", 1000).headers().get(Names.CONTENT_ENCODING), is("gzip"));
+	}
+
+	@Test
+	public void testHandlerOptOut() throws Exception {
+		HttpResponse response = exchange(HttpMethod.GET, HttpResponseStatus.OK, "text/html", 1000, true);
+
+		assertThat(response.headers().get(Names.CONTENT_ENCODING), is(nullValue()));
+		assertThat(response.headers().contains(ContentCompressor.NO_COMPRESSION), is(false));
+		assertThat(policy.compressedCount(), is(0L));
+	}
+
+	@Test
+	public void testOptOutMarkRemovedWithoutEncoding() throws Exception {
+		HttpResponse head = exchange(HttpMethod.HEAD, HttpResponseStatus.OK, "text/html", 0, true);
+		HttpResponse notModified = exchange(HttpMethod.GET, HttpResponseStatus.NOT_MODIFIED, "text/html", 0, true);
+
+		assertThat(head.headers().contains(ContentCompressor.NO_COMPRESSION), is(false));
+		assertThat(notModified.headers().contains(ContentCompressor.NO_COMPRESSION), is(false));
+	}
+
+	private HttpResponse exchange(String contentType, int size) {
+		return exchange(HttpMethod.GET, HttpResponseStatus.OK, contentType, size, false);
+	}
+
+	private HttpResponse exchange(HttpMethod method, HttpResponseStatus status, String contentType, int size,
+			boolean optOut) {
+		DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, "/");
+		request.headers().set(Names.ACCEPT_ENCODING, "gzip");
+
+		channel.writeInbound(request);
+		ReferenceCountUtil.release(channel.readInbound());
+
+		FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+				Unpooled.copiedBuffer(Strings.repeat("a", size), Charsets.UTF_8));
+		response.headers().set(Names.CONTENT_TYPE, contentType);
+		if (optOut) {
+			response.headers().set(ContentCompressor.NO_COMPRESSION, Boolean.TRUE);
+		}
+
+		channel.writeOutbound(response);
+
+		HttpResponse ret = null;
+		Object msg;
+		while ((msg = channel.readOutbound()) != null) {
+			if (msg instanceof HttpResponse && ret == null) {
+				ret = (HttpResponse) msg;
+			}
+			if (msg instanceof HttpObject && msg != ret) {
+				ReferenceCountUtil.release(msg);
+			}
+		}
+
+		return ret;
+	}
+}
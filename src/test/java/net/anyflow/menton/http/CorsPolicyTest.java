@@ -0,0 +1,103 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * @author anyflow
+ */
+public class CorsPolicyTest {
+
+	private final CorsPolicy policy = new CorsPolicy(true, ImmutableSet.of("https://example.com"), "GET, POST",
+			"X-Custom", 600);
+
+	@Test
+	public void testAllowedOrigin() throws Exception {
+		FullHttpResponse response = response();
+		policy.apply(request(HttpMethod.GET, "https://Example.com"), response);
+
+		assertThat(response.headers().get(Names.ACCESS_CONTROL_ALLOW_ORIGIN), is("https://Example.com"));
+		assertThat(response.headers().get(Names.VARY), is(Names.ORIGIN));
+	}
+
+	@Test
+	public void testDisallowedOrigin() throws Exception {
+		FullHttpResponse response = response();
+		policy.apply(request(HttpMethod.GET, "https://evil.com"), response);
+
+		assertThat(response.headers().get(Names.ACCESS_CONTROL_ALLOW_ORIGIN), is(nullValue()));
+	}
+
+	@Test
+	public void testAnyOrigin() throws Exception {
+		CorsPolicy any = new CorsPolicy(true, ImmutableSet.of("*"), "GET", "X-Custom", 600);
+
+		FullHttpResponse response = response();
+		any.apply(request(HttpMethod.GET, "https://evil.com"), response);
+
+		assertThat(response.headers().get(Names.ACCESS_CONTROL_ALLOW_ORIGIN), is("*"));
+	}
+
+	@Test
+	public void testPreflight() throws Exception {
+		FullHttpRequest request = request(HttpMethod.OPTIONS, "https://example.com");
+		request.headers().set(Names.ACCESS_CONTROL_REQUEST_METHOD, "POST");
+
+		assertThat(policy.isPreflight(request), is(true));
+
+		FullHttpResponse response = response();
+		policy.preflight(request, response);
+
+		assertThat(response.getStatus(), is(HttpResponseStatus.OK));
+		assertThat(response.headers().get(Names.ACCESS_CONTROL_ALLOW_METHODS), is("GET, POST"));
+		assertThat(response.headers().get(Names.ACCESS_CONTROL_ALLOW_HEADERS), is("X-Custom"));
+		assertThat(response.headers().get(Names.ACCESS_CONTROL_MAX_AGE), is("600"));
+	}
+
+	@Test
+	public void testPreflightOfDisallowedOrigin() throws Exception {
+		FullHttpRequest request = request(HttpMethod.OPTIONS, "https://evil.com");
+		request.headers().set(Names.ACCESS_CONTROL_REQUEST_METHOD, "POST");
+
+		FullHttpResponse response = response();
+		policy.preflight(request, response);
+
+		assertThat(response.getStatus(), is(HttpResponseStatus.FORBIDDEN));
+		assertThat(response.headers().get(Names.ACCESS_CONTROL_ALLOW_METHODS), is(nullValue()));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		CorsPolicy disabled = new CorsPolicy(false, ImmutableSet.of("*"), "GET", "X-Custom", 600);
+
+		FullHttpRequest request = request(HttpMethod.OPTIONS, "https://example.com");
+		request.headers().set(Names.ACCESS_CONTROL_REQUEST_METHOD, "POST");
+
+		assertThat(disabled.isPreflight(request), is(false));
+	}
+
+	private static FullHttpRequest request(HttpMethod method, String origin) {
+		FullHttpRequest ret = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, "/twitter");
+		ret.headers().set(Names.ORIGIN, origin);
+
+		return ret;
+	}
+
+	private static FullHttpResponse response() {
+		return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+	}
+}
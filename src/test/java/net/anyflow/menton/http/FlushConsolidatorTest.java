@@ -0,0 +1,87 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * @author anyflow
+ */
+public class FlushConsolidatorTest {
+
+	private final FlushCounter counter = new FlushCounter();
+
+	@Test
+	public void testFlushesInReadConsolidated() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushConsolidator(256, false),
+				new FlushingHandler());
+
+		channel.pipeline().fireChannelRead("1");
+		channel.pipeline().fireChannelRead("2");
+		channel.pipeline().fireChannelRead("3");
+		assertThat(counter.count, is(0));
+
+		channel.pipeline().fireChannelReadComplete();
+		assertThat(counter.count, is(1));
+	}
+
+	@Test
+	public void testMaxFlushes() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushConsolidator(2, false), new FlushingHandler());
+
+		channel.pipeline().fireChannelRead("1");
+		assertThat(counter.count, is(0));
+
+		channel.pipeline().fireChannelRead("2");
+		assertThat(counter.count, is(1));
+	}
+
+	@Test
+	public void testFlushesOutOfReadScheduled() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushConsolidator(256, true));
+
+		channel.flush();
+		channel.flush();
+		assertThat(counter.count, is(0));
+
+		channel.runPendingTasks();
+		assertThat(counter.count, is(1));
+	}
+
+	@Test
+	public void testFlushesOutOfReadPassed() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(counter, new FlushConsolidator(256, false));
+
+		channel.flush();
+		channel.flush();
+		assertThat(counter.count, is(2));
+	}
+
+	private static class FlushCounter extends ChannelOutboundHandlerAdapter {
+
+		private int count;
+
+		@Override
+		public void flush(ChannelHandlerContext ctx) throws Exception {
+			++count;
+			ctx.flush();
+		}
+	}
+
+	/**
+	 * Flushes on every read, as the handlers writing responses do.
+	 */
+	private static class FlushingHandler extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			ctx.flush();
+		}
+	}
+}
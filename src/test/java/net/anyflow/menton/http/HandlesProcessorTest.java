@@ -0,0 +1,169 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * Compiles sample handlers with {@link HandlesProcessor}.
+ *
+ * @author anyflow
+ */
+public class HandlesProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File sources;
+	private File classes;
+
+	@Before
+	public void setUp() throws Exception {
+		sources = folder.newFolder("src");
+		classes = folder.newFolder("classes");
+	}
+
+	@Test
+	public void testManifest() throws Exception {
+		List<Diagnostic<? extends JavaFileObject>> errors = compile(
+				source("TweetHandler",
+						"@HttpRequestHandler.Handles(paths = { \"tweet/{id}\", \"/tweet\" }, httpMethods = { \"GET\", \"DELETE\" })",
+						"public class TweetHandler extends HttpRequestHandler {",
+						"	public String service() { return null; }", "}"),
+				source("ListHandler", "@HttpRequestHandler.Handles(paths = { \"list\" }, httpMethods = { \"GET\" },"
+						+ " webResourcePath = \"/list.html\")", "public class ListHandler extends HttpRequestHandler {",
+						"	public String service() { return null; }", "}"),
+				source("Helper", "public class Helper {", "}"));
+
+		assertThat(errors.isEmpty(), is(true));
+		assertThat(manifest(), is((List<String>) ImmutableList.of("sample.ListHandler\tlist\tGET\t/list.html",
+				"sample.TweetHandler\ttweet/{id},/tweet\tGET,DELETE\tnone")));
+	}
+
+	@Test
+	public void testStatefulSingleton() throws Exception {
+		List<Diagnostic<? extends JavaFileObject>> errors = compile(source("StatefulHandler",
+				"@HttpRequestHandler.Handles(paths = { \"tweet\" }, httpMethods = { \"GET\" }, scope = HttpRequestHandler.Scope.SINGLETON)",
+				"public class StatefulHandler extends HttpRequestHandler {", "	public String service() { return null; }",
+				"}"));
+
+		assertThat(errors.size(), is(1));
+		assertThat(errors.get(0).getMessage(null), containsString(
+				"is SINGLETON scope but extends neither StatelessHttpRequestHandler nor AsyncHttpRequestHandler"));
+	}
+
+	@Test
+	public void testStatelessSingleton() throws Exception {
+		List<Diagnostic<? extends JavaFileObject>> errors = compile(source("StatelessHandler",
+				"@HttpRequestHandler.Handles(paths = { \"tweet\" }, httpMethods = { \"GET\" }, scope = HttpRequestHandler.Scope.SINGLETON)",
+				"public class StatelessHandler extends StatelessHttpRequestHandler {",
+				"	public String service(HttpRequest request, HttpResponse response) { return null; }", "}"),
+				source("RelayHandler",
+						"@HttpRequestHandler.Handles(paths = { \"relay\" }, httpMethods = { \"GET\" }, scope = HttpRequestHandler.Scope.SINGLETON)",
+						"public class RelayHandler extends AsyncHttpRequestHandler {",
+						"	public com.google.common.util.concurrent.ListenableFuture<String> serviceAsync(HttpRequest request, HttpResponse response) {",
+						"		return null;", "	}", "}"));
+
+		assertThat(errors.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testMissingOverride() throws Exception {
+		List<Diagnostic<? extends JavaFileObject>> errors = compile(
+				source("NoServiceHandler", "@HttpRequestHandler.Handles(paths = { \"none\" }, httpMethods = { \"GET\" })",
+						"public class NoServiceHandler extends HttpRequestHandler {", "}"),
+				source("NoServiceAsyncHandler",
+						"@HttpRequestHandler.Handles(paths = { \"async\" }, httpMethods = { \"GET\" })",
+						"public class NoServiceAsyncHandler extends AsyncHttpRequestHandler {", "}"));
+
+		// abstract methods are not implemented.
+		assertThat(errors.size(), is(2));
+		assertThat(errors.get(0).getCode(), is("compiler.err.does.not.override.abstract"));
+		assertThat(errors.get(1).getCode(), is("compiler.err.does.not.override.abstract"));
+	}
+
+	@Test
+	public void testEntryOfUnannotatedClassDropped() throws Exception {
+		File tweetHandler = source("TweetHandler",
+				"@HttpRequestHandler.Handles(paths = { \"tweet\" }, httpMethods = { \"GET\" })",
+				"public class TweetHandler extends HttpRequestHandler {", "	public String service() { return null; }",
+				"}");
+		File listHandler = source("ListHandler", "@HttpRequestHandler.Handles(paths = { \"list\" }, httpMethods = { \"GET\" })",
+				"public class ListHandler extends HttpRequestHandler {", "	public String service() { return null; }",
+				"}");
+
+		assertThat(compile(tweetHandler, listHandler).isEmpty(), is(true));
+		assertThat(manifest().size(), is(2));
+
+		// incremental compile of the handler which lost the annotation only.
+		tweetHandler = source("TweetHandler", "public class TweetHandler extends HttpRequestHandler {",
+				"	public String service() { return null; }", "}");
+
+		assertThat(compile(tweetHandler).isEmpty(), is(true));
+		assertThat(manifest(), is((List<String>) ImmutableList.of("sample.ListHandler\tlist\tGET\tnone")));
+	}
+
+	private File source(String className, String... lines) throws IOException {
+		File ret = new File(sources, "sample/" + className + ".java");
+
+		Files.createParentDirs(ret);
+		Files.write("package sample;\n\nimport net.anyflow.menton.http.*;\n\n" + Joiner.on('\n').join(lines) + "\n", ret,
+				Charsets.UTF_8);
+
+		return ret;
+	}
+
+	/**
+	 * @return compile errors
+	 */
+	private List<Diagnostic<? extends JavaFileObject>> compile(File... files) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+		// surefire runs tests with a manifest-only jar in java.class.path.
+		String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"))
+				+ File.pathSeparator + classes.getPath();
+
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, Charsets.UTF_8)) {
+			compiler.getTask(null, fileManager, diagnostics,
+					ImmutableList.of("-d", classes.getPath(), "-classpath", classpath, "-processor",
+							HandlesProcessor.class.getName()),
+					null, fileManager.getJavaFileObjects(files)).call();
+		}
+
+		List<Diagnostic<? extends JavaFileObject>> ret = Lists.newArrayList();
+		for (Diagnostic<? extends JavaFileObject> item : diagnostics.getDiagnostics()) {
+			if (item.getKind() == Diagnostic.Kind.ERROR) {
+				ret.add(item);
+			}
+		}
+
+		return ret;
+	}
+
+	private List<String> manifest() throws IOException {
+		return Files.readLines(new File(classes, RouteTable.MANIFEST_PATH), Charsets.UTF_8);
+	}
+}
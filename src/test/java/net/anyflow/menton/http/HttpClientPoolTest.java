@@ -0,0 +1,209 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.ClosedChannelException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+/**
+ * Tests connection pooling against a local server.
+ * 
+ * @author anyflow
+ */
+public class HttpClientPoolTest {
+
+	private EventLoopGroup serverGroup;
+	private ChannelGroup connections;
+	private final AtomicInteger accepted = new AtomicInteger();
+	private int port;
+
+	private HttpClientPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		serverGroup = new NioEventLoopGroup(1);
+		connections = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+
+		Channel server = new ServerBootstrap().group(serverGroup).channel(NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) throws Exception {
+						accepted.incrementAndGet();
+						connections.add(ch);
+
+						ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(1024), new Responder());
+					}
+				}).bind("127.0.0.1", 0).sync().channel();
+
+		port = ((InetSocketAddress) server.localAddress()).getPort();
+		connections.add(server);
+
+		// 1 connection per host, 300ms acquire timeout and 1 second idle timeout.
+		pool = new HttpClientPool(1, 1, 300, 1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.shutdown();
+
+		connections.close().awaitUninterruptibly();
+		serverGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).awaitUninterruptibly();
+	}
+
+	@Test
+	public void testConnectionReused() throws Exception {
+		assertThat(get("/ok"), is("ok"));
+		assertThat(get("/ok"), is("ok"));
+
+		assertThat(accepted.get(), is(1));
+	}
+
+	@Test
+	public void testConnectionClosedByServerNotReused() throws Exception {
+		assertThat(get("/close"), is("close"));
+		assertThat(get("/ok"), is("ok"));
+
+		assertThat(accepted.get(), is(2));
+	}
+
+	@Test
+	public void testIdleConnectionClosedByServerNotReused() throws Exception {
+		assertThat(get("/ok"), is("ok"));
+
+		closeServerConnections();
+		Thread.sleep(100); // for the client to see the close.
+
+		assertThat(get("/ok"), is("ok"));
+		assertThat(accepted.get(), is(2));
+	}
+
+	@Test
+	public void testMaxConnectionsPerHostAndReleaseOnError() throws Exception {
+		Future<HttpResponse> pending = request("/hang");
+
+		// the only connection of the host is in use.
+		Future<HttpResponse> waiting = request("/ok");
+		assertThat(waiting.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(waiting.cause(), instanceOf(TimeoutException.class));
+
+		// the connection fails while the request is on it.
+		closeServerConnections();
+		assertThat(pending.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(pending.cause(), instanceOf(ClosedChannelException.class));
+
+		// released to the pool despite the failure.
+		assertThat(get("/ok"), is("ok"));
+		assertThat(accepted.get(), is(2));
+	}
+
+	@Test
+	public void testIdleConnectionEvicted() throws Exception {
+		assertThat(get("/ok"), is("ok"));
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (connections.size() > 1 && System.nanoTime() < deadline) {
+			Thread.sleep(50);
+		}
+
+		// only the server channel remains.
+		assertThat(connections.size(), is(1));
+
+		assertThat(get("/ok"), is("ok"));
+		assertThat(accepted.get(), is(2));
+	}
+
+	private Future<HttpResponse> request(String path) throws Exception {
+		HttpRequest request = new HttpRequest(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+				new URI("http", null, "127.0.0.1", port, path, null, null).toString()));
+		request.headers().set(HttpHeaders.Names.HOST, "127.0.0.1");
+
+		return pool.request(request, false, Collections.<ChannelOption<?>, Object> emptyMap(), null);
+	}
+
+	private String get(String path) throws Exception {
+		Future<HttpResponse> future = request(path);
+
+		assertThat(future.await(5, TimeUnit.SECONDS), is(true));
+		if (future.isSuccess() == false) { throw new AssertionError(future.cause()); }
+
+		HttpResponse response = future.getNow();
+		try {
+			return response.content().toString(CharsetUtil.UTF_8);
+		}
+		finally {
+			response.release();
+		}
+	}
+
+	private void closeServerConnections() {
+		for (Channel item : connections) {
+			if (item instanceof SocketChannel) {
+				item.close().awaitUninterruptibly();
+			}
+		}
+	}
+
+	/**
+	 * Responds the path without the leading slash. "/close" closes the
+	 * connection after the response and "/hang" is not responded.
+	 */
+	private static class Responder extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
+			String path = new URI(msg.getUri()).getPath();
+			if ("/hang".equals(path)) { return; }
+
+			FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+					Unpooled.copiedBuffer(path.substring(1), CharsetUtil.UTF_8));
+			HttpHeaders.setContentLength(response, response.content().readableBytes());
+
+			if ("/close".equals(path)) {
+				response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+				ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+				return;
+			}
+
+			ctx.writeAndFlush(response);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.anyflow.menton.Settings;
+
+/**
+ * @author anyflow
+ */
+public class HttpRequestHandlerTest {
+
+	private String contextRoot;
+
+	@Before
+	public void setUp() throws Exception {
+		contextRoot = Settings.SELF.getProperty("menton.httpServer.contextRoot", "/");
+
+		HttpRequestHandler.setRequestHandlerPakcageRoot("net.anyflow.menton.example.twitter");
+	}
+
+	@After
+	public void tearDown() {
+		Settings.SELF.setProperty("menton.httpServer.contextRoot", contextRoot);
+	}
+
+	@Test
+	public void testRouteTableRebuiltOnContextRootChange() throws Exception {
+		Settings.SELF.setProperty("menton.httpServer.contextRoot", "/");
+		assertThat(HttpRequestHandler.findRequestHandler("/twitter/tweet/1", "GET").result(), is(true));
+
+		Settings.SELF.setProperty("menton.httpServer.contextRoot", "/api");
+
+		assertThat(HttpRequestHandler.findRequestHandler("/api/twitter/tweet/1", "GET").result(), is(true));
+		assertThat(HttpRequestHandler.findRequestHandler("/twitter/tweet/1", "GET").result(), is(false));
+	}
+}
@@ -0,0 +1,381 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import net.anyflow.menton.http.sample.PendingAsyncHandler;
+import net.anyflow.menton.http.sample.StreamingHandler;
+import net.anyflow.menton.http.sample.WorkerHandler;
+
+/**
+ * @author anyflow
+ */
+public class HttpRequestRouterTest {
+
+	private ThreadPoolExecutor executor;
+	private EmbeddedChannel channel;
+
+	@Before
+	public void setUp() throws Exception {
+		// no manifest for the package, so the handlers are scanned.
+		HttpRequestHandler.setRequestHandlerPakcageRoot("net.anyflow.menton.http.sample");
+
+		WorkerHandler.gate = new CountDownLatch(1);
+		WorkerHandler.thread = null;
+
+		executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+		channel = new EmbeddedChannel(new HttpRequestRouter(executor));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		WorkerHandler.gate.countDown();
+		executor.shutdownNow();
+
+		channel.finish();
+		for (Object item = channel.readOutbound(); item != null; item = channel.readOutbound()) {
+			ReferenceCountUtil.release(item);
+		}
+	}
+
+	@Test
+	public void testWorkerExecution() throws Exception {
+		channel.writeInbound(request(HttpMethod.GET, "/worker"));
+
+		WorkerHandler.gate.countDown();
+		awaitExecutor();
+
+		assertThat(WorkerHandler.thread == Thread.currentThread(), is(false));
+		assertResponse(HttpResponseStatus.OK, "worker");
+	}
+
+	@Test
+	public void testPendingRequestsLimitedPerHandler() throws Exception {
+		channel.writeInbound(request(HttpMethod.GET, "/limited"));
+
+		// another route of the same handler.
+		channel.writeInbound(request(HttpMethod.POST, "/limited/1"));
+		channel.flush();
+
+		assertResponse(HttpResponseStatus.SERVICE_UNAVAILABLE, null);
+
+		WorkerHandler.gate.countDown();
+		awaitExecutor();
+
+		assertResponse(HttpResponseStatus.OK, "worker");
+	}
+
+	@Test
+	public void testExecutorRejection() throws Exception {
+		channel.finish();
+		executor.shutdown();
+
+		// single thread without queue : a blocked request occupies the executor.
+		executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
+		channel = new EmbeddedChannel(new HttpRequestRouter(executor));
+
+		channel.writeInbound(request(HttpMethod.GET, "/worker"));
+		channel.writeInbound(request(HttpMethod.GET, "/worker"));
+		channel.flush();
+
+		assertResponse(HttpResponseStatus.SERVICE_UNAVAILABLE, null);
+
+		WorkerHandler.gate.countDown();
+		awaitExecutor();
+
+		assertResponse(HttpResponseStatus.OK, "worker");
+	}
+
+	@Test
+	public void testStreamedResponse() throws Exception {
+		channel.writeInbound(request(HttpMethod.GET, "/streamed/success"));
+
+		io.netty.handler.codec.http.HttpResponse header = (io.netty.handler.codec.http.HttpResponse) channel
+				.readOutbound();
+		assertThat(header.getStatus(), is(HttpResponseStatus.OK));
+		assertThat(HttpHeaders.isTransferEncodingChunked(header), is(true));
+
+		assertChunk(channel.readOutbound(), "a");
+		assertChunk(channel.readOutbound(), "b");
+
+		// the string returned by the handler is ignored.
+		Object last = channel.readOutbound();
+		assertThat(last, instanceOf(LastHttpContent.class));
+		assertThat(((LastHttpContent) last).content().isReadable(), is(false));
+
+		assertThat(channel.isOpen(), is(true));
+	}
+
+	@Test
+	public void testStreamedResponseFailed() throws Exception {
+		channel.writeInbound(request(HttpMethod.GET, "/streamed/failure"));
+
+		assertThat(channel.readOutbound(), instanceOf(io.netty.handler.codec.http.HttpResponse.class));
+		assertChunk(channel.readOutbound(), "a");
+
+		// closed without the last chunk : the client sees a truncated body.
+		assertThat(channel.readOutbound(), is(nullValue()));
+		assertThat(channel.isOpen(), is(false));
+	}
+
+	@Test
+	public void testAsyncTimeout() throws Exception {
+		channel.writeInbound(request(HttpMethod.GET, "/async/pending"));
+		assertThat(channel.readOutbound(), is(nullValue()));
+
+		Thread.sleep(50);
+		channel.runScheduledPendingTasks();
+
+		assertResponse(HttpResponseStatus.GATEWAY_TIMEOUT, null);
+		assertThat(PendingAsyncHandler.future.isCancelled(), is(true));
+	}
+
+	@Test
+	public void testAsyncCompletion() throws Exception {
+		channel.writeInbound(request(HttpMethod.GET, "/async/pending"));
+
+		PendingAsyncHandler.future.set("done");
+		channel.runPendingTasks();
+
+		assertResponse(HttpResponseStatus.OK, "done");
+
+		// the timeout is cancelled.
+		Thread.sleep(50);
+		channel.runScheduledPendingTasks();
+		assertThat(channel.readOutbound(), is(nullValue()));
+	}
+
+	@Test
+	public void testAsyncNullFuture() throws Exception {
+		channel.writeInbound(request(HttpMethod.GET, "/async/null"));
+
+		assertResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR, null);
+
+		// no timeout is scheduled for the null future.
+		assertThat(channel.runScheduledPendingTasks(), is(-1L));
+	}
+
+	@Test
+	public void testStreamingChunksInOrder() throws Exception {
+		DeferredExecutor deferred = streamingChannel();
+
+		channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/streaming/worker"),
+				chunk("a"));
+
+		// reading is suspended while the chunk is pending.
+		assertThat(channel.config().isAutoRead(), is(false));
+
+		channel.writeInbound(chunk("b"), new DefaultLastHttpContent(Unpooled.copiedBuffer("c", CharsetUtil.UTF_8)));
+
+		// one task at a time on the executor.
+		assertThat(deferred.size(), is(1));
+
+		while (deferred.runNext()) {
+			channel.runPendingTasks();
+		}
+		channel.flush(); // the deferred tasks run on the event loop, which does not flush.
+
+		assertThat(channel.config().isAutoRead(), is(true));
+		assertResponse(HttpResponseStatus.OK, "abc");
+		assertChunksReleased(3);
+	}
+
+	@Test
+	public void testStreamingOnEventLoop() throws Exception {
+		DeferredExecutor deferred = streamingChannel();
+
+		channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/streaming"), chunk("a"),
+				chunk("b"), new DefaultLastHttpContent(Unpooled.copiedBuffer("c", CharsetUtil.UTF_8)));
+
+		assertThat(deferred.size(), is(0));
+		assertThat(channel.config().isAutoRead(), is(true));
+		assertResponse(HttpResponseStatus.OK, "abc");
+		assertChunksReleased(3);
+	}
+
+	@Test
+	public void testStreamingAborted() throws Exception {
+		DeferredExecutor deferred = streamingChannel();
+
+		channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/streaming/worker"),
+				chunk("a"), chunk("b"));
+		channel.close();
+
+		while (deferred.runNext()) {
+			channel.runPendingTasks();
+		}
+
+		assertThat(channel.readOutbound(), is(nullValue()));
+		assertChunksReleased(2);
+	}
+
+	@Test
+	public void testAggregatedRequestNotStreamed() throws Exception {
+		DeferredExecutor deferred = streamingChannel();
+
+		channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/echo"), chunk("a"),
+				chunk("b"), new DefaultLastHttpContent(Unpooled.copiedBuffer("c", CharsetUtil.UTF_8)));
+
+		assertThat(deferred.size(), is(0));
+		assertResponse(HttpResponseStatus.OK, "abc");
+		assertThat(StreamingHandler.chunks.isEmpty(), is(true));
+	}
+
+	/**
+	 * Replaces the channel with the one of {@link RequestAggregator} and the
+	 * router on a deferred executor.
+	 */
+	private DeferredExecutor streamingChannel() {
+		channel.finish();
+		StreamingHandler.chunks.clear();
+
+		DeferredExecutor ret = new DeferredExecutor();
+		channel = new EmbeddedChannel(new RequestAggregator(1024), new HttpRequestRouter(ret));
+
+		return ret;
+	}
+
+	private static DefaultHttpContent chunk(String content) {
+		return new DefaultHttpContent(Unpooled.copiedBuffer(content, CharsetUtil.UTF_8));
+	}
+
+	private static void assertChunk(Object msg, String content) {
+		try {
+			assertThat(msg instanceof LastHttpContent, is(false));
+			assertThat(((HttpContent) msg).content().toString(CharsetUtil.UTF_8), is(content));
+		}
+		finally {
+			ReferenceCountUtil.release(msg);
+		}
+	}
+
+	private static void assertChunksReleased(int count) {
+		assertThat(StreamingHandler.chunks.size(), is(count));
+
+		for (ByteBuf chunk : StreamingHandler.chunks) {
+			assertThat(chunk.refCnt(), is(0));
+		}
+	}
+
+	private static DefaultFullHttpRequest request(HttpMethod method, String uri) {
+		return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+	}
+
+	/**
+	 * Waits for the pending handlers, whose responses are written without
+	 * flush on the embedded channel.
+	 */
+	private void awaitExecutor() throws InterruptedException {
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+
+		channel.flush();
+	}
+
+	/**
+	 * @param content
+	 *            expected content. null if not checked.
+	 */
+	private void assertResponse(HttpResponseStatus status, String content) {
+		FullHttpResponse response = (FullHttpResponse) channel.readOutbound();
+
+		try {
+			assertThat(response.getStatus(), is(status));
+
+			if (content != null) {
+				assertThat(response.content().toString(CharsetUtil.UTF_8), is(content));
+			}
+		}
+		finally {
+			response.release();
+		}
+	}
+
+	/**
+	 * Executor whose tasks are run by the test on the event loop thread, as
+	 * {@link EmbeddedChannel} is not thread safe.
+	 */
+	private static class DeferredExecutor extends AbstractExecutorService {
+
+		private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+		/**
+		 * @return false if no task was pending.
+		 */
+		private boolean runNext() {
+			Runnable task = tasks.poll();
+			if (task == null) { return false; }
+
+			task.run();
+			return true;
+		}
+
+		private int size() {
+			return tasks.size();
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		@Override
+		public void shutdown() {
+			// no-op
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return Lists.newArrayList(tasks);
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.CharsetUtil;
+
+/**
+ * @author anyflow
+ */
+public class MockHttpServerTest {
+
+	private MockHttpServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MockHttpServer("net.anyflow.menton.http.sample");
+	}
+
+	@Test
+	public void testStreamedResponseCollected() throws Exception {
+		HttpResponse response = new MockHttpClient(server, "http://localhost/streamed/success").get();
+
+		try {
+			assertThat(response.getStatus(), is(HttpResponseStatus.OK));
+			assertThat(response.content().toString(CharsetUtil.UTF_8), is("ab"));
+		}
+		finally {
+			response.release();
+		}
+	}
+}
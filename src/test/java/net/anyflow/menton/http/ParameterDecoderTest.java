@@ -0,0 +1,84 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.CharsetUtil;
+
+/**
+ * @author anyflow
+ */
+public class ParameterDecoderTest {
+
+	private static final String QUERY = "id=1&name=%ED%95%9C+%EA%B8%80&empty=&flag;id=2&=x&tail";
+
+	@Test
+	public void testQueryStringSameAsQueryStringDecoder() throws Exception {
+		Map<String, List<String>> decoded = new HashMap<String, List<String>>();
+		ParameterDecoder.decodeQueryString("/tweet?" + QUERY, decoded);
+
+		assertThat(decoded, is((Map<String, List<String>>) new HashMap<String, List<String>>(
+				new QueryStringDecoder("/tweet?" + QUERY).parameters())));
+	}
+
+	@Test
+	public void testFormSameAsQueryStringDecoder() throws Exception {
+		ByteBuf content = Unpooled.copiedBuffer(QUERY, CharsetUtil.UTF_8);
+
+		Map<String, List<String>> decoded = new HashMap<String, List<String>>();
+		ParameterDecoder.decodeForm(content, decoded);
+
+		assertThat(decoded, is((Map<String, List<String>>) new HashMap<String, List<String>>(
+				new QueryStringDecoder("/dummy?" + QUERY).parameters())));
+		assertThat(content.readerIndex(), is(0));
+
+		content.release();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMalformedEscape() throws Exception {
+		ByteBuf content = Unpooled.copiedBuffer("id=%G1", CharsetUtil.UTF_8);
+
+		try {
+			ParameterDecoder.decodeForm(content, new HashMap<String, List<String>>());
+		}
+		finally {
+			content.release();
+		}
+	}
+
+	@Test
+	public void testTypedParameters() throws Exception {
+		FullHttpRequest raw = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/tweet",
+				Unpooled.copiedBuffer("id=12&since=9876543210&id=13&name=x", CharsetUtil.UTF_8));
+		raw.headers().set(HttpHeaders.Names.CONTENT_TYPE, HttpHeaders.Values.APPLICATION_X_WWW_FORM_URLENCODED);
+
+		HttpRequest request = new HttpRequest(raw, ImmutableMap.<String, String> of());
+
+		assertThat(request.intParameter("id", 0), is(12));
+		assertThat(request.longParameter("since", 0), is(9876543210L));
+		assertThat(request.intParameter("name", -1), is(-1));
+		assertThat(request.intParameter("none", -1), is(-1));
+		assertThat(request.parameterValues("id").size(), is(2));
+		assertThat(request.parameterValues("none").isEmpty(), is(true));
+
+		request.release();
+		raw.release();
+	}
+}
@@ -0,0 +1,114 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+
+/**
+ * @author anyflow
+ */
+public class ReloadableSslContextTest {
+
+	private static final SslOptions OPTIONS = SslOptions.defaults(SslProvider.JDK);
+
+	private File certChainFile;
+	private File privateKeyFile;
+
+	@Before
+	public void setUp() throws Exception {
+		File root = Files.createTempDir();
+
+		certChainFile = new File(root, "cert.pem");
+		privateKeyFile = new File(root, "key.pem");
+
+		write(new SelfSignedCertificate("before"), 1000000000000L);
+	}
+
+	private void write(SelfSignedCertificate certificate, long lastModified) throws Exception {
+		Files.copy(certificate.certificate(), certChainFile);
+		Files.copy(certificate.privateKey(), privateKeyFile);
+
+		certChainFile.setLastModified(lastModified);
+		privateKeyFile.setLastModified(lastModified);
+	}
+
+	@Test
+	public void testReused() throws Exception {
+		ReloadableSslContext context = new ReloadableSslContext(certChainFile, privateKeyFile, OPTIONS, 0);
+
+		assertThat(context.get() == context.get(), is(true));
+	}
+
+	@Test
+	public void testReloadedOnChange() throws Exception {
+		ReloadableSslContext context = new ReloadableSslContext(certChainFile, privateKeyFile, OPTIONS, 0);
+		SslContext before = context.get();
+
+		write(new SelfSignedCertificate("after"), 1000000001000L);
+
+		context.reloadIfChanged();
+
+		SslContext after = context.get();
+		assertThat(after == before, is(false));
+
+		context.reloadIfChanged();
+		assertThat(context.get() == after, is(true));
+	}
+
+	@Test
+	public void testNotReloadedByGet() throws Exception {
+		ReloadableSslContext context = new ReloadableSslContext(certChainFile, privateKeyFile, OPTIONS, 0);
+		SslContext before = context.get();
+
+		write(new SelfSignedCertificate("after"), 1000000001000L);
+
+		assertThat(context.get() == before, is(true));
+	}
+
+	@Test
+	public void testReloadedByScheduler() throws Exception {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+		try {
+			ReloadableSslContext context = new ReloadableSslContext(certChainFile, privateKeyFile, OPTIONS, 10);
+			SslContext before = context.get();
+
+			context.scheduleReload(scheduler);
+			write(new SelfSignedCertificate("after"), 1000000001000L);
+
+			for (int i = 0; i < 500 && context.get() == before; ++i) {
+				Thread.sleep(10);
+			}
+
+			assertThat(context.get() == before, is(false));
+		}
+		finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPreviousKeptOnBrokenFile() throws Exception {
+		ReloadableSslContext context = new ReloadableSslContext(certChainFile, privateKeyFile, OPTIONS, 0);
+		SslContext before = context.get();
+
+		Files.write(new byte[] { 1, 2, 3 }, certChainFile);
+		certChainFile.setLastModified(1000000001000L);
+
+		context.reloadIfChanged();
+
+		assertThat(context.get() == before, is(true));
+	}
+}
@@ -0,0 +1,115 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * @author anyflow
+ */
+public class RequestAggregatorTest {
+
+	private EmbeddedChannel channel;
+
+	@Before
+	public void setUp() throws Exception {
+		// no manifest for the package, so the handlers are scanned.
+		HttpRequestHandler.setRequestHandlerPakcageRoot("net.anyflow.menton.http.sample");
+
+		channel = new EmbeddedChannel(new RequestAggregator(1024));
+	}
+
+	@After
+	public void tearDown() {
+		channel.finish();
+		for (Object item = channel.readInbound(); item != null; item = channel.readInbound()) {
+			ReferenceCountUtil.release(item);
+		}
+	}
+
+	@Test
+	public void testStreamingRequestPassedThrough() throws Exception {
+		writeRequest("/streaming");
+
+		Object head = channel.readInbound();
+		assertThat(head, instanceOf(io.netty.handler.codec.http.HttpRequest.class));
+		assertThat(head instanceof FullHttpRequest, is(false));
+
+		assertContent(channel.readInbound(), "a", false);
+		assertContent(channel.readInbound(), "b", false);
+		assertContent(channel.readInbound(), "c", true);
+		assertThat(channel.readInbound(), is(nullValue()));
+	}
+
+	@Test
+	public void testRequestAggregated() throws Exception {
+		writeRequest("/echo");
+
+		FullHttpRequest request = (FullHttpRequest) channel.readInbound();
+		try {
+			assertThat(request.content().toString(CharsetUtil.UTF_8), is("abc"));
+		}
+		finally {
+			request.release();
+		}
+
+		assertThat(channel.readInbound(), is(nullValue()));
+	}
+
+	@Test
+	public void testRequestAggregatedAfterStreamingRequest() throws Exception {
+		writeRequest("/streaming");
+		for (int i = 0; i < 4; ++i) {
+			ReferenceCountUtil.release(channel.readInbound());
+		}
+
+		writeRequest("/echo");
+
+		FullHttpRequest request = (FullHttpRequest) channel.readInbound();
+		try {
+			assertThat(request.content().toString(CharsetUtil.UTF_8), is("abc"));
+		}
+		finally {
+			request.release();
+		}
+	}
+
+	/**
+	 * Writes a POST request whose body "abc" is split into 3 chunks.
+	 */
+	private void writeRequest(String uri) {
+		channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri),
+				new DefaultHttpContent(Unpooled.copiedBuffer("a", CharsetUtil.UTF_8)),
+				new DefaultHttpContent(Unpooled.copiedBuffer("b", CharsetUtil.UTF_8)),
+				new DefaultLastHttpContent(Unpooled.copiedBuffer("c", CharsetUtil.UTF_8)));
+	}
+
+	private static void assertContent(Object msg, String content, boolean last) {
+		try {
+			assertThat(msg, instanceOf(HttpContent.class));
+			assertThat(msg instanceof LastHttpContent, is(last));
+			assertThat(((HttpContent) msg).content().toString(CharsetUtil.UTF_8), is(content));
+		}
+		finally {
+			ReferenceCountUtil.release(msg);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.timeout.IdleStateEvent;
+
+/**
+ * @author anyflow
+ */
+public class ResponseSequencerTest {
+
+	@Test
+	public void testPipelinedRequestsDispatchedInOrder() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new ResponseSequencer(0));
+
+		channel.writeInbound(request("/1"), request("/2"));
+
+		FullHttpRequest first = (FullHttpRequest) channel.readInbound();
+		assertThat(first.getUri(), is("/1"));
+		assertThat(channel.readInbound(), is(nullValue()));
+		assertThat(channel.config().isAutoRead(), is(false));
+
+		channel.writeAndFlush(response(first));
+		channel.runPendingTasks();
+
+		FullHttpRequest second = (FullHttpRequest) channel.readInbound();
+		assertThat(second.getUri(), is("/2"));
+		assertThat(channel.config().isAutoRead(), is(true));
+
+		channel.writeAndFlush(response(second));
+
+		release(channel);
+		assertThat(channel.isOpen(), is(true));
+	}
+
+	@Test
+	public void testClosedAfterNonKeepAliveResponse() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new ResponseSequencer(0));
+
+		FullHttpRequest request = request("/");
+		request.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+		channel.writeInbound(request);
+
+		channel.writeAndFlush(response((FullHttpRequest) channel.readInbound()));
+
+		release(channel);
+		assertThat(channel.isOpen(), is(false));
+	}
+
+	@Test
+	public void testMaxRequestsPerConnection() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new ResponseSequencer(2));
+
+		for (int i = 0; i < 2; ++i) {
+			channel.writeInbound(request("/"));
+			channel.writeAndFlush(response((FullHttpRequest) channel.readInbound()));
+		}
+
+		channel.readOutbound();
+		FullHttpResponse last = (FullHttpResponse) channel.readOutbound();
+
+		assertThat(last.headers().get(HttpHeaders.Names.CONNECTION), is(HttpHeaders.Values.CLOSE));
+		assertThat(channel.isOpen(), is(false));
+	}
+
+	@Test
+	public void testIdleConnectionClosed() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new ResponseSequencer(0));
+
+		channel.writeInbound(request("/"));
+		channel.pipeline().fireUserEventTriggered(IdleStateEvent.ALL_IDLE_STATE_EVENT);
+		assertThat(channel.isOpen(), is(true));
+
+		channel.writeAndFlush(response((FullHttpRequest) channel.readInbound()));
+		channel.pipeline().fireUserEventTriggered(IdleStateEvent.ALL_IDLE_STATE_EVENT);
+
+		release(channel);
+		assertThat(channel.isOpen(), is(false));
+	}
+
+	private static FullHttpRequest request(String uri) {
+		return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+	}
+
+	private static FullHttpResponse response(FullHttpRequest request) {
+		request.release();
+
+		return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+	}
+
+	private static void release(EmbeddedChannel channel) {
+		Object msg;
+		while ((msg = channel.readOutbound()) != null) {
+			((FullHttpResponse) msg).release();
+		}
+	}
+}
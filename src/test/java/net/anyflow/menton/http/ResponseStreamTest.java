@@ -0,0 +1,208 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+
+/**
+ * @author anyflow
+ */
+public class ResponseStreamTest {
+
+	private EmbeddedChannel channel;
+	private HttpResponse response;
+	private ResponseStream stream;
+	private int prepared;
+
+	@Before
+	public void setUp() {
+		channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		response = HttpResponse.createServerDefault(null);
+		stream = stream(channel.pipeline().firstContext());
+	}
+
+	@After
+	public void tearDown() {
+		response.release();
+
+		channel.finish();
+		for (Object item = channel.readOutbound(); item != null; item = channel.readOutbound()) {
+			ReferenceCountUtil.release(item);
+		}
+	}
+
+	@Test
+	public void testHeaderOnFirstWrite() throws Exception {
+		response.setStatus(HttpResponseStatus.CREATED);
+		response.headers().set("X-Test", "1");
+
+		assertThat(stream.isOpened(), is(false));
+
+		stream.write("a");
+		assertThat(stream.isOpened(), is(true));
+		assertThat(channel.readOutbound(), is(nullValue())); // not flushed yet.
+
+		stream.flush();
+
+		io.netty.handler.codec.http.HttpResponse header = (io.netty.handler.codec.http.HttpResponse) channel
+				.readOutbound();
+		assertThat(header instanceof HttpContent, is(false));
+		assertThat(header.getStatus(), is(HttpResponseStatus.CREATED));
+		assertThat(header.headers().get("X-Test"), is("1"));
+		assertThat(HttpHeaders.isTransferEncodingChunked(header), is(true));
+		assertContent(channel.readOutbound(), "a");
+
+		// ignored after the header is sent.
+		response.setStatus(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+
+		stream.write("b");
+		stream.flush();
+
+		assertContent(channel.readOutbound(), "b");
+		assertThat(channel.readOutbound(), is(nullValue()));
+		assertThat(prepared, is(1));
+	}
+
+	@Test
+	public void testFlushThreshold() throws Exception {
+		stream.write(Strings.repeat("a", 8191));
+		assertThat(channel.readOutbound(), is(nullValue()));
+
+		stream.write("b");
+
+		assertThat(channel.readOutbound(), instanceOf(io.netty.handler.codec.http.HttpResponse.class));
+		assertContent(channel.readOutbound(), Strings.repeat("a", 8191));
+		assertContent(channel.readOutbound(), "b");
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		stream.write("a");
+		stream.close();
+
+		assertThat(stream.isClosed(), is(true));
+		assertThat(channel.readOutbound(), instanceOf(io.netty.handler.codec.http.HttpResponse.class));
+		assertContent(channel.readOutbound(), "a");
+		assertLastContent(channel.readOutbound());
+
+		// closing again does nothing.
+		assertThat(stream.close().isSuccess(), is(true));
+		assertThat(channel.readOutbound(), is(nullValue()));
+
+		ByteBuf chunk = Unpooled.copiedBuffer("b", CharsetUtil.UTF_8);
+		try {
+			stream.write(chunk);
+			fail();
+		}
+		catch (IllegalStateException e) {
+			assertThat(chunk.refCnt(), is(0));
+		}
+	}
+
+	@Test
+	public void testCloseWithoutWrite() throws Exception {
+		stream.close();
+
+		assertThat(channel.readOutbound(), instanceOf(io.netty.handler.codec.http.HttpResponse.class));
+		assertLastContent(channel.readOutbound());
+	}
+
+	@Test
+	public void testWriterBlockedUntilWritable() throws Exception {
+		// the context on its own executor, so that the writer is off the event
+		// loop.
+		DefaultEventExecutorGroup group = new DefaultEventExecutorGroup(1);
+		channel.pipeline().addLast(group, "writer", new ChannelInboundHandlerAdapter());
+
+		final ResponseStream writerStream = stream(channel.pipeline().context("writer"));
+
+		channel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writerStream.write("a");
+			}
+		});
+		writer.start();
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (writer.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertThat(writer.getState(), is(Thread.State.WAITING));
+
+		// the chunk is flushed before blocking. Waits for the executor, as the
+		// embedded channel is not thread safe.
+		group.submit(new Runnable() {
+			@Override
+			public void run() {
+				// no-op
+			}
+		}).get(5, TimeUnit.SECONDS);
+
+		channel.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+		writerStream.writabilityChanged();
+
+		writer.join(5000);
+		assertThat(writer.isAlive(), is(false));
+
+		// writability change events are pending for the context.
+		channel.runPendingTasks();
+		channel.pipeline().remove("writer");
+		group.shutdownGracefully(0, 5, TimeUnit.SECONDS).await(5, TimeUnit.SECONDS);
+
+		assertThat(channel.readOutbound(), instanceOf(io.netty.handler.codec.http.HttpResponse.class));
+		assertContent(channel.readOutbound(), "a");
+	}
+
+	private ResponseStream stream(ChannelHandlerContext ctx) {
+		return new ResponseStream(ctx, response) {
+			@Override
+			void prepare(io.netty.handler.codec.http.HttpResponse header) {
+				++prepared;
+				HttpHeaders.setTransferEncodingChunked(header);
+			}
+		};
+	}
+
+	private static void assertContent(Object msg, String content) {
+		try {
+			assertThat(msg, instanceOf(HttpContent.class));
+			assertThat(msg instanceof LastHttpContent, is(false));
+			assertThat(((HttpContent) msg).content().toString(CharsetUtil.UTF_8), is(content));
+		}
+		finally {
+			ReferenceCountUtil.release(msg);
+		}
+	}
+
+	private static void assertLastContent(Object msg) {
+		assertThat(msg, instanceOf(LastHttpContent.class));
+		assertThat(((LastHttpContent) msg).content().isReadable(), is(false));
+	}
+}
@@ -0,0 +1,136 @@
+package net.anyflow.menton.http;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Compares the compiled route table lookup with the former linear scan
+ * lookup(split and match every criterion) at 10, 100 and 1000 routes.
+ *
+ * @author anyflow
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RouteTableBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	private int routeCount;
+
+	private RouteTable routeTable;
+	private Map<String, Class<? extends HttpRequestHandler>> handlerClassMap;
+	private String[] requestedPaths;
+	private int index;
+
+	@Setup
+	public void setUp() {
+		routeTable = new RouteTable();
+		handlerClassMap = Maps.newHashMap();
+		requestedPaths = new String[routeCount];
+
+		for (int i = 0; i < routeCount; ++i) {
+			String path = "/api/resource" + i + "/{id}/detail";
+
+			routeTable.add("GET", path, Handler.class);
+			handlerClassMap.put(path + "/GET", Handler.class);
+
+			requestedPaths[i] = "/api/resource" + i + "/" + i + "/detail";
+		}
+	}
+
+	@Benchmark
+	public HttpRequestHandler.MatchedCriterion routeTable() {
+		return routeTable.find(nextPath(), "GET");
+	}
+
+	@Benchmark
+	public Class<? extends HttpRequestHandler> linearScan() {
+		String requestedPath = nextPath();
+
+		for (String criterion : handlerClassMap.keySet()) {
+			LinearMatch mc = LinearMatch.match(requestedPath, "GET", criterion);
+
+			if (mc.result) { return handlerClassMap.get(criterion); }
+		}
+
+		return null;
+	}
+
+	private String nextPath() {
+		if (++index >= requestedPaths.length) {
+			index = 0;
+		}
+
+		return requestedPaths[index];
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(RouteTableBenchmark.class.getSimpleName()).build();
+
+		new Runner(options).run();
+	}
+
+	public static class Handler extends HttpRequestHandler {
+		@Override
+		public String service() {
+			return null;
+		}
+	}
+
+	/**
+	 * The former per-criterion matching logic of
+	 * HttpRequestHandler.findRequestHandler.
+	 */
+	private static class LinearMatch {
+
+		private boolean result;
+		private String criterionPath;
+		private final Map<String, String> pathParameters = Maps.newHashMap();
+
+		private static LinearMatch match(String requestedPath, String httpMethod, String criterion) {
+
+			LinearMatch ret = new LinearMatch();
+
+			String testTarget = requestedPath + "/" + httpMethod;
+
+			String[] testTokens = testTarget.split("/");
+			String[] criterionTokens = criterion.split("/");
+
+			if (criterionTokens.length != testTokens.length) { return ret; }
+
+			for (int i = 1; i < criterionTokens.length; ++i) {
+				if (criterionTokens[i].startsWith("{") && criterionTokens[i].endsWith("}")) {
+					ret.pathParameters.put(criterionTokens[i].substring(1, criterionTokens[i].length() - 1),
+							testTokens[i]);
+				}
+				else if (criterionTokens[i].equalsIgnoreCase(testTokens[i]) == false) { return ret; }
+			}
+
+			ret.result = true;
+			ret.criterionPath = criterion.replace("/" + httpMethod, "");
+
+			return ret;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.anyflow.menton.Settings;
+
+/**
+ * @author anyflow
+ */
+public class RouteTableTest {
+
+	private static RouteTable routeTable;
+
+	@BeforeClass
+	public static void setUp() {
+		Settings.SELF.setProperty("menton.httpServer.contextRoot", "/");
+
+		routeTable = new RouteTable();
+
+		routeTable.add("GET", "twitter/tweet/{id}", TweetHandler.class);
+		routeTable.add("GET", "twitter/tweet/latest", LatestHandler.class);
+		routeTable.add("post", "/twitter/tweet", TweetHandler.class);
+		routeTable.add("GET", "/session/{sessionId}/user/{userId}", SessionHandler.class);
+	}
+
+	@Test
+	public void testLiteralPath() throws Exception {
+		HttpRequestHandler.MatchedCriterion mc = routeTable.find("/twitter/tweet", "POST");
+
+		assertThat(mc.result(), is(true));
+		assertThat(mc.requestHandlerClass().equals(TweetHandler.class), is(true));
+		assertThat(mc.criterionPath(), is("/twitter/tweet"));
+		assertThat(mc.pathParameters().isEmpty(), is(true));
+	}
+
+	@Test
+	public void testPathParameters() throws Exception {
+		HttpRequestHandler.MatchedCriterion mc = routeTable.find("/session/s1/user/u2", "GET");
+
+		assertThat(mc.requestHandlerClass().equals(SessionHandler.class), is(true));
+		assertThat(mc.criterionPath(), is("/session/{sessionId}/user/{userId}"));
+		assertThat(mc.pathParameters().get("sessionId"), is("s1"));
+		assertThat(mc.pathParameters().get("userId"), is("u2"));
+	}
+
+	@Test
+	public void testLiteralPrecedesWildcard() throws Exception {
+		assertThat(routeTable.find("/twitter/tweet/latest", "GET").requestHandlerClass().equals(LatestHandler.class),
+				is(true));
+		assertThat(routeTable.find("/twitter/tweet/12", "GET").pathParameters().get("id"), is("12"));
+	}
+
+	@Test
+	public void testCaseInsensitiveSegment() throws Exception {
+		assertThat(routeTable.find("/Twitter/TWEET", "post").result(), is(true));
+	}
+
+	@Test
+	public void testNotFound() throws Exception {
+		assertThat(routeTable.find("/twitter/tweet", "GET").requestHandlerClass(), is(nullValue()));
+		assertThat(routeTable.find("/twitter/tweet/", "POST").requestHandlerClass(), is(nullValue()));
+		assertThat(routeTable.find("/twitter/tweet/12/more", "GET").requestHandlerClass(), is(nullValue()));
+		assertThat(routeTable.find("/twitter", "DELETE").requestHandlerClass(), is(nullValue()));
+	}
+
+	@Test
+	public void testLoadManifest() throws Exception {
+		File root = Files.createTempDir();
+		File manifest = new File(root, RouteTable.MANIFEST_PATH);
+
+		Files.createParentDirs(manifest);
+		Files.write(ManifestHandler.class.getName() + "\ttwitter/tweet/{id},/tweet/{id}\tGET,DELETE\tnone\n"
+				+ "net.anyflow.menton.http.NotExistingHandler\ttwitter/none\tGET\tnone\n"
+				+ TweetHandler.class.getName() + "\ttwitter/stale\tGET\tnone\n", manifest, Charsets.UTF_8);
+
+		URLClassLoader classLoader = new URLClassLoader(new URL[] { root.toURI().toURL() },
+				getClass().getClassLoader());
+
+		RouteTable loaded = RouteTable.load(classLoader, "net.anyflow.menton.http");
+
+		assertThat(loaded.size(), is(4));
+		assertThat(loaded.find("/tweet/3", "DELETE").pathParameters().get("id"), is("3"));
+		assertThat(loaded.find("/twitter/stale", "GET").result(), is(false));
+		assertThat(RouteTable.load(classLoader, "com.example").size(), is(0));
+	}
+
+	@Test
+	public void testSingletonScope() throws Exception {
+		RouteTable table = new RouteTable();
+
+		table.add("GET", "/singleton", SingletonHandler.class);
+		table.add("POST", "/singleton", SingletonHandler.class);
+		table.add("GET", "/tweet", TweetHandler.class);
+
+		HttpRequestHandler handler = table.find("/singleton", "GET").requestHandler();
+
+		assertThat(handler == table.find("/singleton", "GET").requestHandler(), is(true));
+		assertThat(handler == table.find("/singleton", "POST").requestHandler(), is(true));
+		assertThat(table.find("/tweet", "GET").requestHandler() == table.find("/tweet", "GET").requestHandler(),
+				is(false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSingletonScopeWithoutStatelessService() throws Exception {
+		new RouteTable().add("GET", "/singleton", StatefulSingletonHandler.class);
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		RouteTable table = new RouteTable();
+
+		table.add("GET", "/async", AsyncHandler.class);
+
+		assertThat(table.find("/async", "GET").route().async(), is(true));
+	}
+
+	@HttpRequestHandler.Handles(paths = { "/singleton" }, httpMethods = { "GET",
+			"POST" }, scope = HttpRequestHandler.Scope.SINGLETON)
+	public static class SingletonHandler extends StatelessHttpRequestHandler {
+		@Override
+		public String service(HttpRequest request, HttpResponse response) {
+			return null;
+		}
+	}
+
+	@HttpRequestHandler.Handles(paths = { "/singleton" }, httpMethods = {
+			"GET" }, scope = HttpRequestHandler.Scope.SINGLETON)
+	public static class StatefulSingletonHandler extends HttpRequestHandler {
+		@Override
+		public String service() {
+			return null;
+		}
+	}
+
+	@HttpRequestHandler.Handles(paths = { "/async" }, httpMethods = { "GET" })
+	public static class AsyncHandler extends AsyncHttpRequestHandler {
+		@Override
+		public ListenableFuture<String> serviceAsync(HttpRequest request, HttpResponse response) {
+			return Futures.immediateFuture(null);
+		}
+	}
+
+	@HttpRequestHandler.Handles(paths = { "twitter/tweet/{id}", "/tweet/{id}" }, httpMethods = { "GET", "DELETE" })
+	public static class ManifestHandler extends HttpRequestHandler {
+		@Override
+		public String service() {
+			return null;
+		}
+	}
+
+	public static class TweetHandler extends HttpRequestHandler {
+		@Override
+		public String service() {
+			return null;
+		}
+	}
+
+	public static class LatestHandler extends HttpRequestHandler {
+		@Override
+		public String service() {
+			return null;
+		}
+	}
+
+	public static class SessionHandler extends HttpRequestHandler {
+		@Override
+		public String service() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package net.anyflow.menton.http;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.ImmutableList;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+
+/**
+ * Compares in-memory TLS handshake throughput of the server providers, with
+ * full handshakes and with abbreviated handshakes resuming cached sessions.
+ * OPENSSL requires netty-tcnative; the provider falls back to JDK if it is
+ * not available(see the logged provider).
+ *
+ * @author anyflow
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SslHandshakeBenchmark {
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	@Param({ "jdk", "openssl" })
+	private String provider;
+
+	@Param({ "false", "true" })
+	private boolean resumption;
+
+	private SslContext serverContext;
+	private SslContext clientContext;
+	private int port;
+
+	@Setup
+	public void setUp() throws Exception {
+		SelfSignedCertificate certificate = new SelfSignedCertificate();
+		SslProvider sslProvider = SslOptions.selectProvider(provider);
+
+		serverContext = new SslOptions(sslProvider, resumption ? 1024 : 1, 0, null, ImmutableList.<String> of(),
+				ImmutableList.<String> of()).build(certificate.certificate(), certificate.privateKey());
+
+		clientContext = SslContextBuilder.forClient().sslProvider(SslProvider.JDK)
+				.trustManager(InsecureTrustManagerFactory.INSTANCE).sessionCacheSize(resumption ? 1024 : 1).build();
+	}
+
+	@Benchmark
+	public void handshake() throws SSLException {
+		// the client reuses the session of the same peer only.
+		SSLEngine client = clientContext.newEngine(ByteBufAllocator.DEFAULT, "localhost",
+				resumption ? 8443 : ++port);
+		SSLEngine server = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+
+		handshake(client, server);
+	}
+
+	private static void handshake(SSLEngine client, SSLEngine server) throws SSLException {
+		ByteBuffer clientToServer = ByteBuffer.allocate(65536);
+		ByteBuffer serverToClient = ByteBuffer.allocate(65536);
+		ByteBuffer application = ByteBuffer.allocate(65536);
+
+		client.beginHandshake();
+		server.beginHandshake();
+
+		for (int i = 0; i < 100; ++i) {
+			if (finished(client) && finished(server)) { return; }
+
+			wrap(client, clientToServer);
+			unwrap(server, clientToServer, application);
+
+			wrap(server, serverToClient);
+			unwrap(client, serverToClient, application);
+		}
+
+		throw new IllegalStateException("Handshake was not finished.");
+	}
+
+	private static boolean finished(SSLEngine engine) {
+		HandshakeStatus status = engine.getHandshakeStatus();
+
+		return status == HandshakeStatus.NOT_HANDSHAKING || status == HandshakeStatus.FINISHED;
+	}
+
+	private static void wrap(SSLEngine engine, ByteBuffer dst) throws SSLException {
+		while (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+			SSLEngineResult result = engine.wrap(EMPTY, dst);
+			runTasks(engine);
+
+			if (result.bytesProduced() == 0) {
+				break;
+			}
+		}
+	}
+
+	private static void unwrap(SSLEngine engine, ByteBuffer src, ByteBuffer application) throws SSLException {
+		src.flip();
+
+		while (src.hasRemaining()) {
+			SSLEngineResult result = engine.unwrap(src, application);
+			runTasks(engine);
+
+			if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesConsumed() == 0) {
+				break;
+			}
+		}
+
+		src.compact();
+		application.clear();
+	}
+
+	private static void runTasks(SSLEngine engine) {
+		Runnable task;
+		while ((task = engine.getDelegatedTask()) != null) {
+			task.run();
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(SslHandshakeBenchmark.class.getSimpleName()).build();
+
+		new Runner(options).run();
+	}
+}
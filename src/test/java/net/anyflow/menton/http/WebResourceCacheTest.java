@@ -0,0 +1,173 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import net.anyflow.menton.Settings;
+
+/**
+ * @author anyflow
+ */
+public class WebResourceCacheTest {
+
+	private static File root;
+	private WebResourceCache cache;
+
+	@BeforeClass
+	public static void setUpClass() {
+		root = Files.createTempDir();
+		Settings.SELF.setWebResourcePhysicalRootPath(root.getPath());
+	}
+
+	@Before
+	public void setUp() {
+		cache = new WebResourceCache(1024, 100, false, 0);
+	}
+
+	@Test
+	public void testHitAndMiss() throws Exception {
+		Files.write("hello", new File(root, "hit.html"), Charsets.UTF_8);
+
+		WebResource first = cache.get("/hit.html");
+		WebResource second = cache.get("/hit.html");
+
+		assertThat(second == first, is(true));
+		assertThat(cache.missCount(), is(1L));
+		assertThat(cache.hitCount(), is(1L));
+		assertThat(cache.weight(), is(5L));
+
+		ByteBuf content = second.retainedContent();
+		assertThat(content.toString(Charsets.UTF_8), is("hello"));
+		content.release();
+	}
+
+	@Test
+	public void testNotFound() throws Exception {
+		assertThat(cache.get("/nothing.html"), is(nullValue()));
+	}
+
+	@Test
+	public void testInvalidatedOnChange() throws Exception {
+		File file = new File(root, "changed.html");
+		Files.write("before", file, Charsets.UTF_8);
+
+		WebResource before = cache.get("/changed.html");
+
+		Files.write("after changed", file, Charsets.UTF_8);
+
+		WebResource after = cache.get("/changed.html");
+		assertThat(after == before, is(false));
+		assertThat(before.retainedContent(), is(nullValue()));
+		assertThat(cache.missCount(), is(2L));
+
+		ByteBuf content = after.retainedContent();
+		assertThat(content.toString(Charsets.UTF_8), is("after changed"));
+		content.release();
+	}
+
+	@Test
+	public void testRevalidatedOncePerInterval() throws Exception {
+		WebResourceCache revalidatingCache = new WebResourceCache(1024, 100, false, 60 * 60 * 1000);
+
+		File file = new File(root, "interval.html");
+		Files.write("before", file, Charsets.UTF_8);
+
+		WebResource before = revalidatingCache.get("/interval.html");
+
+		Files.write("after changed", file, Charsets.UTF_8);
+
+		// the file is not checked within the interval.
+		assertThat(revalidatingCache.get("/interval.html") == before, is(true));
+		assertThat(before.isStale(60 * 60 * 1000), is(false));
+		assertThat(before.isStale(0), is(true));
+
+		revalidatingCache.invalidateAll();
+	}
+
+	@Test
+	public void testLargeResourceNotCached() throws Exception {
+		Files.write(new byte[101], new File(root, "large.js"));
+
+		WebResource resource = cache.get("/large.js");
+
+		assertThat(resource, is(notNullValue()));
+		assertThat(resource.retainedContent(), is(nullValue()));
+		assertThat(cache.size(), is(0L));
+	}
+
+	@Test
+	public void testNotModified() throws Exception {
+		Files.write("validators", new File(root, "validators.css"), Charsets.UTF_8);
+
+		WebResource resource = cache.get("/validators.css");
+		DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+				"/validators.css");
+
+		assertThat(resource.isNotModified(request), is(false));
+
+		request.headers().set(Names.IF_NONE_MATCH, resource.etag());
+		assertThat(resource.isNotModified(request), is(true));
+
+		request.headers().set(Names.IF_NONE_MATCH, "\"other\"");
+		assertThat(resource.isNotModified(request), is(false));
+	}
+
+	@Test
+	public void testPrecompressedSibling() throws Exception {
+		Files.write("original", new File(root, "sibling.js"), Charsets.UTF_8);
+		Files.write("compressed", new File(root, "sibling.js.gz"), Charsets.UTF_8);
+
+		WebResource resource = cache.get("/sibling.js");
+
+		assertThat(resource.select("deflate").path(), is("/sibling.js"));
+		assertThat(resource.select("gzip;q=0, deflate").path(), is("/sibling.js"));
+
+		WebResource gzip = resource.select("deflate, gzip");
+		assertThat(gzip.path(), is("/sibling.js.gz"));
+		assertThat(gzip.etag().equals(resource.etag()), is(false));
+
+		ByteBuf content = gzip.retainedContent();
+		assertThat(content.toString(Charsets.UTF_8), is("compressed"));
+		content.release();
+	}
+
+	@Test
+	public void testCompressedOnCaching() throws Exception {
+		WebResourceCache compressingCache = new WebResourceCache(1024, 1024, true, 0);
+
+		Files.write(Strings.repeat("compressible ", 50), new File(root, "compressible.html"), Charsets.UTF_8);
+
+		WebResource resource = compressingCache.get("/compressible.html");
+		WebResource gzip = resource.select("gzip");
+
+		assertThat(gzip == resource, is(false));
+		assertThat(gzip.length() < resource.length(), is(true));
+		assertThat(compressingCache.weight(), is(resource.length() + gzip.length()));
+
+		ByteBuf content = gzip.retainedContent();
+		byte[] decompressed = ByteStreams.toByteArray(new GZIPInputStream(new ByteBufInputStream(content)));
+		content.release();
+
+		assertThat(new String(decompressed, Charsets.UTF_8), is(Strings.repeat("compressible ", 50)));
+	}
+}
@@ -0,0 +1,324 @@
+package net.anyflow.menton.http;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpClientUpgradeHandler;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2ClientUpgradeCodec;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.util.CharsetUtil;
+import net.anyflow.menton.Settings;
+import net.anyflow.menton.http.sample.WorkerHandler;
+
+/**
+ * Serves HTTP/1.1 and HTTP/2 clients on a local server.
+ *
+ * @author anyflow
+ */
+public class WebServerChannelInitializerTest {
+
+	private EventLoopGroup group;
+	private ExecutorService businessExecutor;
+	private final AtomicInteger accepted = new AtomicInteger();
+	private final BlockingQueue<FullHttpResponse> responses = new LinkedBlockingQueue<FullHttpResponse>();
+
+	private boolean useSsl;
+	private Channel client;
+
+	@Before
+	public void setUp() throws Exception {
+		HttpRequestHandler.setRequestHandlerPakcageRoot("net.anyflow.menton.http.sample");
+
+		Settings.SELF.setProperty("menton.httpServer.h2c", "true");
+		Settings.SELF.setProperty("menton.ssl.certChainFilePath", "self");
+		Settings.SELF.setProperty("menton.ssl.privateKeyFilePath", "self");
+		Settings.SELF.setProperty("menton.ssl.provider", "jdk");
+		Settings.SELF.setProperty("menton.ssl.alpnProtocols", "h2,http/1.1");
+
+		group = new NioEventLoopGroup(2);
+		businessExecutor = Executors.newCachedThreadPool();
+
+		WorkerHandler.gate = new CountDownLatch(0);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		WorkerHandler.gate.countDown();
+
+		if (client != null) {
+			client.close().syncUninterruptibly();
+		}
+
+		group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+		businessExecutor.shutdownNow();
+
+		FullHttpResponse response;
+		while ((response = responses.poll()) != null) {
+			response.release();
+		}
+	}
+
+	@Test
+	public void testH2cPriorKnowledge() throws Exception {
+		client = connect(start(false), null, new Http2Client());
+
+		stream(client).writeAndFlush(echo("hello"));
+
+		assertResponse("hello");
+	}
+
+	@Test
+	public void testStreamsMultiplexed() throws Exception {
+		client = connect(start(false), null, new Http2Client());
+
+		WorkerHandler.gate = new CountDownLatch(1);
+		stream(client).writeAndFlush(get("/worker"));
+
+		// not blocked by the pending response of the other stream.
+		stream(client).writeAndFlush(echo("hello"));
+		assertResponse("hello");
+
+		assertThat(responses.poll(100, TimeUnit.MILLISECONDS), is(nullValue()));
+
+		WorkerHandler.gate.countDown();
+		assertResponse("worker");
+
+		assertThat(accepted.get(), is(1));
+	}
+
+	@Test
+	public void testH2cUpgrade() throws Exception {
+		final HttpClientCodec sourceCodec = new HttpClientCodec();
+		final Http2FrameCodec codec = Http2FrameCodecBuilder.forClient().build();
+
+		client = connect(start(false), null, new ChannelInitializer<Channel>() {
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				Http2ClientUpgradeCodec upgradeCodec = new Http2ClientUpgradeCodec((Http2ConnectionHandler) codec,
+						new Http2MultiplexHandler(new ChannelInboundHandlerAdapter(), new StreamInitializer()));
+
+				ch.pipeline().addLast(sourceCodec, new HttpClientUpgradeHandler(sourceCodec, upgradeCodec, 65536),
+						new HttpObjectAggregator(65536), new Collector());
+			}
+		});
+
+		// served on the upgraded stream 1.
+		client.writeAndFlush(get("/worker"));
+		assertResponse("worker");
+
+		assertThat(client.pipeline().get(HttpClientCodec.class), is(nullValue()));
+
+		stream(client).writeAndFlush(echo("hello"));
+		assertResponse("hello");
+	}
+
+	@Test
+	public void testHttp11OnH2cPort() throws Exception {
+		client = connect(start(false), null, new Http11Client());
+
+		client.writeAndFlush(echo("hello"));
+		assertResponse("hello");
+
+		client.writeAndFlush(echo("world"));
+		assertResponse("world");
+	}
+
+	@Test
+	public void testAlpnH2() throws Exception {
+		client = connect(start(true), ApplicationProtocolNames.HTTP_2, new Http2Client());
+
+		assertThat(client.pipeline().get(SslHandler.class).applicationProtocol(), is(ApplicationProtocolNames.HTTP_2));
+
+		stream(client).writeAndFlush(echo("hello"));
+		assertResponse("hello");
+	}
+
+	@Test
+	public void testAlpnHttp11() throws Exception {
+		client = connect(start(true), ApplicationProtocolNames.HTTP_1_1, new Http11Client());
+
+		assertThat(client.pipeline().get(SslHandler.class).applicationProtocol(),
+				is(ApplicationProtocolNames.HTTP_1_1));
+
+		client.writeAndFlush(echo("hello"));
+		assertResponse("hello");
+	}
+
+	@Test
+	public void testWithoutAlpn() throws Exception {
+		client = connect(start(true), null, new Http11Client());
+
+		client.writeAndFlush(echo("hello"));
+		assertResponse("hello");
+	}
+
+	/**
+	 * @return port of the server
+	 */
+	private int start(boolean useSsl) throws Exception {
+		this.useSsl = useSsl;
+
+		final WebServerChannelInitializer initializer = new WebServerChannelInitializer(useSsl, null,
+				businessExecutor, null);
+
+		Channel server = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) throws Exception {
+						accepted.incrementAndGet();
+						ch.pipeline().addLast(initializer);
+					}
+				}).bind("127.0.0.1", 0).sync().channel();
+
+		return ((InetSocketAddress) server.localAddress()).getPort();
+	}
+
+	/**
+	 * @param alpnProtocol
+	 *            ALPN protocol the client offers over TLS. null means plain
+	 *            text or TLS without ALPN if the server uses SSL.
+	 */
+	private Channel connect(int port, String alpnProtocol, final ChannelHandler handler) throws Exception {
+		final SslContext sslContext = useSsl ? clientSslContext(alpnProtocol) : null;
+
+		Channel ret = new Bootstrap().group(group).channel(NioSocketChannel.class)
+				.handler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) throws Exception {
+						if (sslContext != null) {
+							ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+						}
+						ch.pipeline().addLast(handler);
+					}
+				}).connect("127.0.0.1", port).sync().channel();
+
+		if (sslContext != null) {
+			ret.pipeline().get(SslHandler.class).handshakeFuture().sync();
+		}
+
+		return ret;
+	}
+
+	private static SslContext clientSslContext(String alpnProtocol) throws Exception {
+		SslContextBuilder builder = SslContextBuilder.forClient().sslProvider(SslProvider.JDK)
+				.trustManager(InsecureTrustManagerFactory.INSTANCE);
+
+		if (alpnProtocol != null) {
+			builder.applicationProtocolConfig(new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+					ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+					ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT, alpnProtocol));
+		}
+
+		return builder.build();
+	}
+
+	private Http2StreamChannel stream(Channel connection) {
+		return new Http2StreamChannelBootstrap(connection).handler(new StreamInitializer()).open()
+				.syncUninterruptibly().getNow();
+	}
+
+	private void assertResponse(String content) throws InterruptedException {
+		FullHttpResponse response = responses.poll(5, TimeUnit.SECONDS);
+
+		assertThat(response.getStatus(), is(HttpResponseStatus.OK));
+		assertThat(response.content().toString(CharsetUtil.UTF_8), is(content));
+
+		response.release();
+	}
+
+	private static FullHttpRequest get(String uri) {
+		FullHttpRequest ret = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+		ret.headers().set(HttpHeaders.Names.HOST, "127.0.0.1");
+
+		return ret;
+	}
+
+	private static FullHttpRequest echo(String content) {
+		FullHttpRequest ret = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/echo",
+				Unpooled.copiedBuffer(content, CharsetUtil.UTF_8));
+		ret.headers().set(HttpHeaders.Names.HOST, "127.0.0.1");
+		HttpHeaders.setContentLength(ret, ret.content().readableBytes());
+
+		return ret;
+	}
+
+	private class Collector extends SimpleChannelInboundHandler<FullHttpResponse> {
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) throws Exception {
+			responses.add(msg.retain());
+		}
+	}
+
+	private class Http11Client extends ChannelInitializer<Channel> {
+		@Override
+		protected void initChannel(Channel ch) throws Exception {
+			ch.pipeline().addLast(new HttpClientCodec(), new HttpObjectAggregator(65536), new Collector());
+		}
+	}
+
+	private class Http2Client extends ChannelInitializer<Channel> {
+		@Override
+		protected void initChannel(Channel ch) throws Exception {
+			ch.pipeline().addLast(Http2FrameCodecBuilder.forClient().build(),
+					new Http2MultiplexHandler(new ChannelInboundHandlerAdapter()));
+		}
+	}
+
+	private class StreamInitializer extends ChannelInitializer<Channel> {
+		@Override
+		protected void initChannel(Channel ch) throws Exception {
+			ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(false), new HttpObjectAggregator(65536),
+					new Collector());
+		}
+	}
+}
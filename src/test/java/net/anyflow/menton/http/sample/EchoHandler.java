@@ -0,0 +1,19 @@
+package net.anyflow.menton.http.sample;
+
+import io.netty.util.CharsetUtil;
+import net.anyflow.menton.http.HttpRequestHandler;
+
+/**
+ * Responds the aggregated request content.
+ * 
+ * @author anyflow
+ */
+@HttpRequestHandler.Handles(paths = { "/echo" }, httpMethods = {
+		"POST" }, execution = HttpRequestHandler.Execution.EVENT_LOOP)
+public class EchoHandler extends HttpRequestHandler {
+
+	@Override
+	public String service() {
+		return httpRequest().content().toString(CharsetUtil.UTF_8);
+	}
+}
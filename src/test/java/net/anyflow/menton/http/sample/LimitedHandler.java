@@ -0,0 +1,14 @@
+package net.anyflow.menton.http.sample;
+
+import net.anyflow.menton.http.HttpRequestHandler;
+
+/**
+ * {@link WorkerHandler} which accepts a single pending request across its
+ * paths and methods.
+ * 
+ * @author anyflow
+ */
+@HttpRequestHandler.Handles(paths = { "/limited", "/limited/{id}" }, httpMethods = { "GET",
+		"POST" }, execution = HttpRequestHandler.Execution.WORKER, maxPendingRequests = 1)
+public class LimitedHandler extends WorkerHandler {
+}
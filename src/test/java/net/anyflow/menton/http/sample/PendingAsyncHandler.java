@@ -0,0 +1,30 @@
+package net.anyflow.menton.http.sample;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import net.anyflow.menton.http.AsyncHttpRequestHandler;
+import net.anyflow.menton.http.HttpRequest;
+import net.anyflow.menton.http.HttpRequestHandler;
+import net.anyflow.menton.http.HttpResponse;
+
+/**
+ * Asynchronous handler whose future is completed by the test. Returns null
+ * future if the result path parameter is "null".
+ * 
+ * @author anyflow
+ */
+@HttpRequestHandler.Handles(paths = { "/async/{result}" }, httpMethods = {
+		"GET" }, execution = HttpRequestHandler.Execution.EVENT_LOOP, timeout = 10)
+public class PendingAsyncHandler extends AsyncHttpRequestHandler {
+
+	public static volatile SettableFuture<String> future;
+
+	@Override
+	public ListenableFuture<String> serviceAsync(HttpRequest request, HttpResponse response) {
+		if ("null".equals(request.pathParameter("result"))) { return null; }
+
+		future = SettableFuture.create();
+		return future;
+	}
+}
@@ -0,0 +1,25 @@
+package net.anyflow.menton.http.sample;
+
+import net.anyflow.menton.http.HttpRequestHandler;
+
+/**
+ * Writes the response body via the response stream. Fails after the first
+ * chunk if the result path parameter is "failure".
+ * 
+ * @author anyflow
+ */
+@HttpRequestHandler.Handles(paths = { "/streamed/{result}" }, httpMethods = {
+		"GET" }, execution = HttpRequestHandler.Execution.EVENT_LOOP)
+public class StreamedHandler extends HttpRequestHandler {
+
+	@Override
+	public String service() {
+		httpResponse().stream().write("a");
+		httpResponse().stream().flush();
+
+		if ("failure".equals(httpRequest().pathParameter("result"))) { throw new IllegalStateException("failure"); }
+
+		httpResponse().stream().write("b");
+		return "ignored";
+	}
+}
@@ -0,0 +1,40 @@
+package net.anyflow.menton.http.sample;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import net.anyflow.menton.http.HttpRequest;
+import net.anyflow.menton.http.HttpRequestHandler;
+
+/**
+ * Streaming handler on the event loop, which responds the received chunks
+ * concatenated.
+ * 
+ * @author anyflow
+ */
+@HttpRequestHandler.Handles(paths = { "/streaming" }, httpMethods = {
+		"POST" }, execution = HttpRequestHandler.Execution.EVENT_LOOP, streaming = true)
+public class StreamingHandler extends HttpRequestHandler {
+
+	/**
+	 * chunks received by all the instances, to check their release.
+	 */
+	public static final List<ByteBuf> chunks = Collections.synchronizedList(Lists.<ByteBuf> newArrayList());
+
+	private final StringBuilder received = new StringBuilder();
+
+	@Override
+	public void contentReceived(HttpRequest request, ByteBuf content) {
+		chunks.add(content);
+		received.append(content.toString(CharsetUtil.UTF_8));
+	}
+
+	@Override
+	public String service() {
+		return received.toString();
+	}
+}
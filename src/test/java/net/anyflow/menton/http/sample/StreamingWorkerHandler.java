@@ -0,0 +1,13 @@
+package net.anyflow.menton.http.sample;
+
+import net.anyflow.menton.http.HttpRequestHandler;
+
+/**
+ * {@link StreamingHandler} executed on the business executor.
+ * 
+ * @author anyflow
+ */
+@HttpRequestHandler.Handles(paths = { "/streaming/worker" }, httpMethods = {
+		"POST" }, execution = HttpRequestHandler.Execution.WORKER, streaming = true)
+public class StreamingWorkerHandler extends StreamingHandler {
+}
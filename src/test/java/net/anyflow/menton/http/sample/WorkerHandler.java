@@ -0,0 +1,29 @@
+package net.anyflow.menton.http.sample;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import net.anyflow.menton.http.HttpRequestHandler;
+
+/**
+ * Handler executed on the business executor, which blocks until the gate is
+ * opened.
+ * 
+ * @author anyflow
+ */
+@HttpRequestHandler.Handles(paths = { "/worker" }, httpMethods = {
+		"GET" }, execution = HttpRequestHandler.Execution.WORKER)
+public class WorkerHandler extends HttpRequestHandler {
+
+	public static volatile CountDownLatch gate = new CountDownLatch(0);
+	public static volatile Thread thread;
+
+	@Override
+	public String service() {
+		thread = Thread.currentThread();
+		Uninterruptibles.awaitUninterruptibly(gate);
+
+		return "worker";
+	}
+}